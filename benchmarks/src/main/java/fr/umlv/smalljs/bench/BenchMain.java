@@ -0,0 +1,20 @@
+package fr.umlv.smalljs.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.Runner;
+
+// run with java -jar benchmarks/target/benchmarks.jar [jmh options] [benchmark regex]
+public class BenchMain {
+  public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+    // always report the allocation rate (gc.alloc.rate and gc.alloc.rate.norm) next to the score
+    var options = new OptionsBuilder()
+        .parent(new CommandLineOptions(args))
+        .addProfiler(GCProfiler.class)
+        .build();
+    new Runner(options).run();
+  }
+}
@@ -0,0 +1,52 @@
+package fr.umlv.smalljs.bench;
+
+import fr.umlv.smalljs.ast.ASTBuilder;
+import fr.umlv.smalljs.ast.Script;
+import fr.umlv.smalljs.ast.ScriptCodec;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time to get a {@link Script} from a pre-parsed script ({@link ScriptCodec#decode(byte[])})
+ * compared to parsing the source ({@link ASTBuilder#createScript(String)}),
+ * on the generated corpus of {@link ParseBenchmark}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DecodeBenchmark {
+  @Param("1000")
+  public int functions;
+
+  private String corpus;
+  private byte[] bytes;
+
+  @Setup
+  public void setup() {
+    corpus = ParseBenchmark.corpus(functions);
+    bytes = ScriptCodec.encode(ASTBuilder.createScript(corpus));
+  }
+
+  @Benchmark
+  public Script createScript() {
+    return ASTBuilder.createScript(corpus);
+  }
+
+  @Benchmark
+  public Script decode() {
+    return ScriptCodec.decode(bytes);
+  }
+}
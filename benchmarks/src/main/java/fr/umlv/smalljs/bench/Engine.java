@@ -0,0 +1,27 @@
+package fr.umlv.smalljs.bench;
+
+import fr.umlv.smalljs.ast.Script;
+import fr.umlv.smalljs.astinterp.ASTInterpreter;
+import fr.umlv.smalljs.jvminterp.JVMInterpreter;
+import fr.umlv.smalljs.stackinterp.StackInterpreter;
+import java.io.PrintStream;
+import java.util.function.BiConsumer;
+
+/**
+ * The three execution engines, all driven through their {@code interpret(Script, PrintStream)} entry point.
+ */
+public enum Engine {
+  ast(ASTInterpreter::interpret),
+  stack(StackInterpreter::interpret),
+  jvm(JVMInterpreter::interpret);
+
+  private final BiConsumer<Script, PrintStream> interpreter;
+
+  Engine(BiConsumer<Script, PrintStream> interpreter) {
+    this.interpreter = interpreter;
+  }
+
+  public void interpret(Script script, PrintStream outStream) {
+    interpreter.accept(script, outStream);
+  }
+}
@@ -0,0 +1,51 @@
+package fr.umlv.smalljs.bench;
+
+import static fr.umlv.smalljs.ast.ASTBuilder.createScript;
+
+import fr.umlv.smalljs.ast.Script;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Steady-state throughput of each engine on each workload.
+ * The script is parsed once, only {@code interpret} is measured.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EngineBenchmark {
+  @Param
+  public Engine engine;
+
+  @Param
+  public Workload workload;
+
+  private Script script;
+  private PrintStream outStream;
+
+  @Setup
+  public void setup() {
+    script = createScript(workload.code());
+    outStream = new PrintStream(OutputStream.nullOutputStream());
+  }
+
+  @Benchmark
+  public void interpret() {
+    engine.interpret(script, outStream);
+  }
+}
@@ -0,0 +1,52 @@
+package fr.umlv.smalljs.bench;
+
+import static fr.umlv.smalljs.ast.ASTBuilder.createScript;
+
+import fr.umlv.smalljs.ast.Script;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Warm-up behavior of each engine: every measurement is a single run in a fresh JVM without warm-up,
+ * so the score is the time to the first result, with class loading, bytecode generation and
+ * interpretation by the JVM included. Compare with {@link EngineBenchmark} for the steady state.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(10)
+@State(Scope.Benchmark)
+public class EngineWarmupBenchmark {
+  @Param
+  public Engine engine;
+
+  @Param
+  public Workload workload;
+
+  private Script script;
+  private PrintStream outStream;
+
+  @Setup
+  public void setup() {
+    script = createScript(workload.code());
+    outStream = new PrintStream(OutputStream.nullOutputStream());
+  }
+
+  @Benchmark
+  public void firstRun() {
+    engine.interpret(script, outStream);
+  }
+}
@@ -0,0 +1,65 @@
+package fr.umlv.smalljs.bench;
+
+import fr.umlv.smalljs.ast.ASTBuilder;
+import fr.umlv.smalljs.jvminterp.JVMInterpreter;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+
+/**
+ * Metaspace used by the classes generated by the 'jvm' engine for a script of {@code FUNCTIONS} functions
+ * (the corpus of {@link ParseBenchmark}), while the script runs and once the script is done
+ * and the classes can be unloaded.
+ * The script is run once before the measure, so the classes of the runtime are already loaded.
+ */
+// run with java -cp benchmarks/target/benchmarks.jar fr.umlv.smalljs.bench.FunctionFootprint
+public class FunctionFootprint {
+  private static final int FUNCTIONS = 1_000;
+
+  private static final MemoryPoolMXBean METASPACE = ManagementFactory.getMemoryPoolMXBeans().stream()
+      .filter(pool -> pool.getName().equals("Metaspace"))
+      .findFirst()
+      .orElseThrow();
+
+  // used and committed bytes
+  private static long[] metaspace() {
+    for (var i = 0; i < 4; i++) {
+      System.gc();
+    }
+    var usage = METASPACE.getUsage();
+    return new long[] { usage.getUsed(), usage.getCommitted() };
+  }
+
+  private static String delta(long[] before, long[] after, long classes) {
+    return (after[0] - before[0]) / 1024 + " KB used (" + (after[0] - before[0]) / classes + " bytes per class), "
+        + (after[1] - before[1]) / 1024 + " KB committed";
+  }
+
+  public static void main(String[] args) {
+    var script = ASTBuilder.createScript(ParseBenchmark.corpus(FUNCTIONS));
+    var out = new PrintStream(OutputStream.nullOutputStream());
+    JVMInterpreter.interpret(script, out);  // warmup
+
+    var classLoading = ManagementFactory.getClassLoadingMXBean();
+    var before = metaspace();
+    var loadedBefore = classLoading.getTotalLoadedClassCount();
+    var unloadedBefore = classLoading.getUnloadedClassCount();
+
+    // measure the metaspace when the script calls print, the functions are still reachable
+    var during = new long[][] { null };
+    JVMInterpreter.interpret(script, new PrintStream(out) {
+      @Override
+      public void println(String x) {
+        during[0] = metaspace();
+      }
+    });
+    var after = metaspace();
+
+    var loaded = classLoading.getTotalLoadedClassCount() - loadedBefore;
+    var unloaded = classLoading.getUnloadedClassCount() - unloadedBefore;
+    System.out.println(FUNCTIONS + " functions, " + loaded + " classes loaded, " + unloaded + " unloaded");
+    System.out.println("metaspace while running: " + delta(before, during[0], loaded));
+    System.out.println("metaspace after the run: " + delta(before, after, loaded));
+  }
+}
@@ -0,0 +1,80 @@
+package fr.umlv.smalljs.bench;
+
+import static fr.umlv.smalljs.rt.JSObject.UNDEFINED;
+import static java.lang.invoke.MethodType.methodType;
+
+import fr.umlv.smalljs.rt.JSObject;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of {@link JSObject#invoke(Object, Object...)} compared to the previous implementation
+ * that prepends the receiver and calls {@link MethodHandle#invokeWithArguments(Object...)},
+ * for a native function created from an Invoker and for a function with a fixed arity
+ * (like the functions of the jvm engine).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class InvokeBenchmark {
+  private static Object add(Object receiver, Object a, Object b) {
+    return (Integer) a + (Integer) b;
+  }
+
+  private JSObject invokerFunction;
+  private JSObject fixedArityFunction;
+  private Integer a;
+  private Integer b;
+
+  @Setup
+  public void setup() throws ReflectiveOperationException {
+    invokerFunction = JSObject.newFunction("+", (_, args) -> (Integer) args[0] + (Integer) args[1]);
+    var add = MethodHandles.lookup().findStatic(InvokeBenchmark.class, "add",
+        methodType(Object.class, Object.class, Object.class, Object.class));
+    fixedArityFunction = JSObject.newFunction("add", add);
+    a = 40;
+    b = 2;
+  }
+
+  // the previous implementation of JSObject.invoke
+  private static Object invokeWithArguments(JSObject function, Object receiver, Object... args) throws Throwable {
+    var array = new Object[args.length + 1];
+    array[0] = receiver;
+    System.arraycopy(args, 0, array, 1, args.length);
+    return function.methodHandle().invokeWithArguments(array);
+  }
+
+  @Benchmark
+  public Object invokerFunctionInvokeWithArguments() throws Throwable {
+    return invokeWithArguments(invokerFunction, UNDEFINED, a, b);
+  }
+
+  @Benchmark
+  public Object invokerFunctionInvoke() {
+    return invokerFunction.invoke(UNDEFINED, a, b);
+  }
+
+  @Benchmark
+  public Object fixedArityFunctionInvokeWithArguments() throws Throwable {
+    return invokeWithArguments(fixedArityFunction, UNDEFINED, a, b);
+  }
+
+  @Benchmark
+  public Object fixedArityFunctionInvoke() {
+    return fixedArityFunction.invoke(UNDEFINED, a, b);
+  }
+}
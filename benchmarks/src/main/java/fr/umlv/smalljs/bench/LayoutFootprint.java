@@ -0,0 +1,56 @@
+package fr.umlv.smalljs.bench;
+
+import fr.umlv.smalljs.rt.JSObject;
+import java.util.stream.IntStream;
+
+/**
+ * Memory retained by the layouts (hidden classes) of {@link JSObject}s with 1, 8 and 64 fields.
+ * For each field count, {@code SHAPES} objects with distinct keys are created, so each one
+ * has its own chain of layouts; the objects are then dropped, only the transition tree of
+ * the layouts stays reachable.
+ * The keys are allocated before the measure, so they are not counted.
+ */
+// run with java -cp benchmarks/target/benchmarks.jar fr.umlv.smalljs.bench.LayoutFootprint
+public class LayoutFootprint {
+  private static final int SHAPES = 2_000;
+
+  private static long usedMemory() {
+    var runtime = Runtime.getRuntime();
+    for (var i = 0; i < 4; i++) {
+      System.gc();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  private static long bytesPerShape(int fieldCount, int run) {
+    var keys = IntStream.range(0, SHAPES)
+        .mapToObj(shape -> IntStream.range(0, fieldCount)
+            .mapToObj(field -> ("r" + run + "s" + shape + "f" + field).intern())
+            .toArray(String[]::new))
+        .toArray(String[][]::new);
+
+    var before = usedMemory();
+    for (var shapeKeys : keys) {
+      var object = JSObject.newObject(null);
+      for (var key : shapeKeys) {
+        object.register(key, 0);
+      }
+      // lookup the fields, so the lazy structures of the layout are created
+      for (var round = 0; round < 32; round++) {
+        for (var key : shapeKeys) {
+          object.layoutSlot(key);
+        }
+      }
+    }
+    var after = usedMemory();
+    return (after - before) / SHAPES;
+  }
+
+  public static void main(String[] args) {
+    var run = 0;
+    for (var fieldCount : new int[] { 1, 8, 64 }) {
+      bytesPerShape(fieldCount, run++);  // warmup
+      System.out.println(fieldCount + " fields: " + bytesPerShape(fieldCount, run++) + " bytes per shape");
+    }
+  }
+}
@@ -0,0 +1,89 @@
+package fr.umlv.smalljs.bench;
+
+import fr.umlv.smalljs.ast.ASTBuilder;
+import fr.umlv.smalljs.ast.Script;
+import fr.umlv.smalljs.grammar.antlr.ECMAScriptLexer;
+import fr.umlv.smalljs.grammar.antlr.ECMAScriptParser;
+import java.util.concurrent.TimeUnit;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parse throughput over a generated corpus of {@code functions} functions
+ * (about 10 lines each, with calls, ifs, object literals, field and method accesses).
+ * {@code createScript} is the two-stage parsing (SLL then LL) of {@link ASTBuilder} plus the creation of the AST,
+ * {@code parseLL} is the previous parsing, only with the default LL prediction mode,
+ * {@code parseSLL} is the first stage alone.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParseBenchmark {
+  @Param("1000")
+  public int functions;
+
+  private String corpus;
+
+  static String corpus(int functions) {
+    var builder = new StringBuilder();
+    for (var i = 0; i < functions; i++) {
+      builder.append("""
+          function f%1$d(a, b) {
+            var o = { x: a, y: b, name: "f%1$d" };
+            o.sum = function(c) { return this.x + this.y + c; };
+            if (a < b) {
+              return o.sum(%1$d);
+            } else {
+              print(o.name, a * b - %1$d);
+            }
+            return f%2$d(b, a %% 7);
+          }
+          """.formatted(i, Math.max(0, i - 1)));
+    }
+    builder.append("print(f").append(functions - 1).append("(1, 2));\n");
+    return builder.toString();
+  }
+
+  @Setup
+  public void setup() {
+    corpus = corpus(functions);
+  }
+
+  private static ParseTree parse(String code, PredictionMode predictionMode) {
+    var lexer = new ECMAScriptLexer(CharStreams.fromString(code));
+    var parser = new ECMAScriptParser(new CommonTokenStream(lexer));
+    parser.getInterpreter().setPredictionMode(predictionMode);
+    return parser.program();
+  }
+
+  @Benchmark
+  public Script createScript() {
+    return ASTBuilder.createScript(corpus);
+  }
+
+  @Benchmark
+  public ParseTree parseLL() {
+    return parse(corpus, PredictionMode.LL);
+  }
+
+  @Benchmark
+  public ParseTree parseSLL() {
+    return parse(corpus, PredictionMode.SLL);
+  }
+}
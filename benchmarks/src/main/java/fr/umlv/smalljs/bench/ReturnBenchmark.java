@@ -0,0 +1,57 @@
+package fr.umlv.smalljs.bench;
+
+import static fr.umlv.smalljs.ast.ASTBuilder.createScript;
+
+import fr.umlv.smalljs.ast.Script;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of {@code return} in a recursive function, fibo(25) does 242785 calls and as many returns.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ReturnBenchmark {
+  private static final String FIBO_25 = """
+      function fibo(n) {
+        if (n < 2) {
+          return 1;
+        }
+        return fibo(n - 1) + fibo(n - 2);
+      }
+      fibo(25);
+      """;
+
+  @Param("ast")
+  public Engine engine;
+
+  private Script script;
+  private PrintStream outStream;
+
+  @Setup
+  public void setup() {
+    script = createScript(FIBO_25);
+    outStream = new PrintStream(OutputStream.nullOutputStream());
+  }
+
+  @Benchmark
+  public void fibo25() {
+    engine.interpret(script, outStream);
+  }
+}
@@ -0,0 +1,55 @@
+package fr.umlv.smalljs.bench;
+
+import fr.umlv.smalljs.ast.ASTBuilder;
+import fr.umlv.smalljs.ast.Script;
+import fr.umlv.smalljs.jvminterp.JVMInterpreter;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time of the first run of the generated corpus of {@link ParseBenchmark} by the 'jvm' engine in a fresh JVM,
+ * with every function compiled when it is created ({@code tiered=0}) or with the tiered mode,
+ * the functions being compiled after {@code tiered} calls.
+ * Use {@code EngineBenchmark -p engine=jvm -jvmArgsAppend -Dsmalljs.jvm.tiered=100} to check the steady state.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(10)
+@State(Scope.Benchmark)
+public class TieredBenchmark {
+  @Param("1000")
+  public int functions;
+
+  @Param({"0", "100"})
+  public int tiered;
+
+  private Script script;
+  private PrintStream outStream;
+
+  @Setup
+  public void setup() {
+    // read when the engine is initialized, so before the first run
+    System.setProperty("smalljs.jvm.tiered", "" + tiered);
+    script = ASTBuilder.createScript(ParseBenchmark.corpus(functions));
+    outStream = new PrintStream(OutputStream.nullOutputStream());
+  }
+
+  @Benchmark
+  public void firstRun() {
+    JVMInterpreter.interpret(script, outStream);
+  }
+}
@@ -0,0 +1,78 @@
+package fr.umlv.smalljs.bench;
+
+/**
+ * Scripts shared by all the benchmarks.
+ * smalljs has no loop, so every workload iterates using a recursive function.
+ */
+public enum Workload {
+  fibo("""
+      function fibo(n) {
+        if (n < 2) {
+          return 1;
+        } else {
+          return fibo(n - 1) + fibo(n - 2);
+        }
+      }
+      fibo(15);
+      """),
+  allocation("""
+      function alloc(n) {
+        if (n < 1) {
+          return 0;
+        }
+        var point = { x: n, y: n + 1 };
+        return alloc(n - 1);
+      }
+      alloc(50);
+      """),
+  methodCall("""
+      function loop(counter, n, acc) {
+        if (n < 1) {
+          return acc;
+        }
+        return loop(counter, n - 1, counter.inc(acc));
+      }
+      var counter = {
+        step: 1,
+        inc: function(x) {
+          return x + this.step;
+        }
+      };
+      loop(counter, 50, 0);
+      """),
+  globalLookup("""
+      function one() {
+        return 1;
+      }
+      function two() {
+        return one() + one();
+      }
+      function loop(n, acc) {
+        if (n < 1) {
+          return acc;
+        }
+        return loop(n - 1, acc + two());
+      }
+      loop(50, 0);
+      """),
+  fieldAccess("""
+      function sum(point, n) {
+        if (n < 1) {
+          return 0;
+        }
+        return point.x + point.y + sum(point, n - 1);
+      }
+      var point = { x: 1, y: 2 };
+      sum(point, 50);
+      """);
+
+  private final String code;
+
+  Workload(String code) {
+    this.code = code;
+  }
+
+  public String code() {
+    return code;
+  }
+}
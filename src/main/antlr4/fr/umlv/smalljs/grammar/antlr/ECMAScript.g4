@@ -773,10 +773,14 @@ eof
     : EOF
     ;
 
+// The predicates of the lexer rules are never on the left edge of a rule:
+// a predicate in the closure of the start state prevents the lexer DFA from caching
+// its start state, so the whole lexer ATN would be simulated for each token.
+
 /// RegularExpressionLiteral ::
 ///     / RegularExpressionBody / RegularExpressionFlags
 RegularExpressionLiteral
-    : {isRegexPossible()}? '/' RegularExpressionBody '/' RegularExpressionFlags
+    : '/' {isRegexPossible()}? RegularExpressionBody '/' RegularExpressionFlags
     ;
 
 /// 7.3 Line Terminators
@@ -1000,7 +1004,7 @@ HexIntegerLiteral
     ;
 
 OctalIntegerLiteral
-    : {!strictMode}? '0' OctalDigit+
+    : '0' {!strictMode}? OctalDigit+
     ;
 
 /// 7.6.1.1 Keywords
@@ -1140,39 +1144,39 @@ Import
 /// The following tokens are also considered to be FutureReservedWords
 /// when parsing strict mode
 Implements
-    : {strictMode}? 'implements'
+    : 'implements' {strictMode}?
     ;
 
 Let
-    : {strictMode}? 'let'
+    : 'let' {strictMode}?
     ;
 
 Private
-    : {strictMode}? 'private'
+    : 'private' {strictMode}?
     ;
 
 Public
-    : {strictMode}? 'public'
+    : 'public' {strictMode}?
     ;
 
 Interface
-    : {strictMode}? 'interface'
+    : 'interface' {strictMode}?
     ;
 
 Package
-    : {strictMode}? 'package'
+    : 'package' {strictMode}?
     ;
 
 Protected
-    : {strictMode}? 'protected'
+    : 'protected' {strictMode}?
     ;
 
 Static
-    : {strictMode}? 'static'
+    : 'static' {strictMode}?
     ;
 
 Yield
-    : {strictMode}? 'yield'
+    : 'yield' {strictMode}?
     ;
 
 /// 7.6 Identifier Names and Identifiers
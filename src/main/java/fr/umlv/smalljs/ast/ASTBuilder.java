@@ -8,10 +8,15 @@ import fr.umlv.smalljs.rt.JSObject;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Objects;
+import org.antlr.v4.runtime.BailErrorStrategy;
 import org.antlr.v4.runtime.CharStreams;
 import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.ConsoleErrorListener;
+import org.antlr.v4.runtime.DefaultErrorStrategy;
 import org.antlr.v4.runtime.ParserRuleContext;
 import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
 import org.antlr.v4.runtime.tree.ErrorNode;
 import org.antlr.v4.runtime.tree.ParseTree;
 import org.antlr.v4.runtime.tree.RuleNode;
@@ -26,12 +31,35 @@ public final class ASTBuilder implements ECMAScriptVisitor<Expr> {
     var lexer = new fr.umlv.smalljs.grammar.antlr.ECMAScriptLexer(input);
     var tokens = new CommonTokenStream(lexer);
     var parser = new ECMAScriptParser(tokens);
-    var tree = parser.program();
+    var tree = parse(parser, tokens);
     var visitor = new ASTBuilder();
     var body = (Expr.Block) tree.accept(visitor);
     return new Script(body);
   }
 
+  /**
+   * Two-stage parsing, first with the SLL prediction mode which is faster but may fail
+   * on valid inputs, without error reporting nor recovery,
+   * then if it fails, with the full LL prediction mode and the default error strategy.
+   * The DFA cache of the parser is shared by all the parsers, so it warms up across scripts.
+   */
+  private static ECMAScriptParser.ProgramContext parse(ECMAScriptParser parser, CommonTokenStream tokens) {
+    parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+    parser.removeErrorListeners();
+    parser.setErrorHandler(new BailErrorStrategy());
+    try {
+      return parser.program();
+    } catch (ParseCancellationException e) {
+      // rewind and parse again
+      tokens.seek(0);
+      parser.reset();
+      parser.addErrorListener(ConsoleErrorListener.INSTANCE);
+      parser.setErrorHandler(new DefaultErrorStrategy());
+      parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+      return parser.program();
+    }
+  }
+
   private int lineNumber(Token token) {
     return token.getLine();
   }
@@ -2,6 +2,7 @@ package fr.umlv.smalljs.ast;
 
 import static java.util.Objects.requireNonNull;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -91,7 +92,8 @@ public sealed interface Expr {
   record ObjectLiteral(Map<String, Expr> initMap, int lineNumber) implements Expr {
     public ObjectLiteral {
       // don't use Map.copyOf here because the order is not guaranteed
-      requireNonNull(initMap);
+      // (the map is wrapped because a Script can be shared, see ScriptCache)
+      initMap = Collections.unmodifiableMap(requireNonNull(initMap));
     }
   }
 
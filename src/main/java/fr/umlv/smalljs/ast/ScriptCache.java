@@ -0,0 +1,76 @@
+package fr.umlv.smalljs.ast;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A bounded cache of the {@link Script}s created by {@link ASTBuilder#createScript(String)},
+ * so a source code that is run several times is only parsed once.
+ * The key is the source code, a lookup compares its hash code (cached by the String) then its content.
+ * When the cache is full, the least recently used script is evicted.
+ * This class is thread-safe, the parsing is done outside the lock so two threads may parse
+ * the same source code at the same time, both are counted as misses.
+ */
+public final class ScriptCache {
+  private final int maxSize;
+  private final LinkedHashMap<String, Script> map;
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+
+  public ScriptCache(int maxSize) {
+    if (maxSize <= 0) {
+      throw new IllegalArgumentException("maxSize <= 0");
+    }
+    this.maxSize = maxSize;
+    this.map = new LinkedHashMap<>(16, 0.75f, true) {  // access order
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Script> eldest) {
+        return size() > ScriptCache.this.maxSize;
+      }
+    };
+  }
+
+  public Script createScript(String code) {
+    requireNonNull(code);
+    synchronized (map) {
+      var script = map.get(code);
+      if (script != null) {
+        hits.increment();
+        return script;
+      }
+    }
+    misses.increment();
+    var script = ASTBuilder.createScript(code);
+    synchronized (map) {
+      // keep the first script if another thread was faster
+      var previous = map.putIfAbsent(code, script);
+      return previous != null ? previous : script;
+    }
+  }
+
+  public int maxSize() {
+    return maxSize;
+  }
+
+  public int size() {
+    synchronized (map) {
+      return map.size();
+    }
+  }
+
+  public long hits() {
+    return hits.sum();
+  }
+
+  public long misses() {
+    return misses.sum();
+  }
+
+  @Override
+  public String toString() {
+    return "ScriptCache size " + size() + "/" + maxSize + " hits " + hits() + " misses " + misses();
+  }
+}
@@ -0,0 +1,368 @@
+package fr.umlv.smalljs.ast;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNull;
+
+import fr.umlv.smalljs.ast.Expr.Block;
+import fr.umlv.smalljs.ast.Expr.Call;
+import fr.umlv.smalljs.ast.Expr.FieldAccess;
+import fr.umlv.smalljs.ast.Expr.FieldAssignment;
+import fr.umlv.smalljs.ast.Expr.Fun;
+import fr.umlv.smalljs.ast.Expr.Identifier;
+import fr.umlv.smalljs.ast.Expr.If;
+import fr.umlv.smalljs.ast.Expr.Literal;
+import fr.umlv.smalljs.ast.Expr.MethodCall;
+import fr.umlv.smalljs.ast.Expr.ObjectLiteral;
+import fr.umlv.smalljs.ast.Expr.Return;
+import fr.umlv.smalljs.ast.Expr.VarAssignment;
+import fr.umlv.smalljs.rt.JSObject;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compact binary encoding of a {@link Script} (the .sjsb files), so a script can be run
+ * without being parsed again, the decoder does not use ANTLR.
+ *
+ * The format is
+ * <pre>
+ *   magic "SJSB", version (1 byte)
+ *   string table: count (varint), then for each string its UTF-8 length (varint) and bytes
+ *   tree: the body of the script as an expression
+ * </pre>
+ * An expression is a tag (1 byte) per record type, its line number (varint),
+ * then its components in declaration order, a string is an index in the string table (varint),
+ * a list is a size (varint) followed by its elements, a boolean is a byte.
+ * An int literal is zigzag encoded so a negative value stays small.
+ * The decoder rejects a tree nested more than {@value #MAX_DEPTH} levels deep.
+ */
+public final class ScriptCodec {
+  private ScriptCodec() {
+    throw new AssertionError();
+  }
+
+  private static final byte[] MAGIC = { 'S', 'J', 'S', 'B' };
+  private static final int VERSION = 1;
+
+  // maximum nesting of the expressions, the decoder is recursive
+  // and a frame of expr() takes about 500 bytes of stack
+  private static final int MAX_DEPTH = 1_000;
+
+  private static final int BLOCK = 0;
+  private static final int FIELD_ACCESS = 1;
+  private static final int FIELD_ASSIGNMENT = 2;
+  private static final int FUN = 3;
+  private static final int CALL = 4;
+  private static final int IF = 5;
+  private static final int LITERAL_INT = 6;
+  private static final int LITERAL_STRING = 7;
+  private static final int LITERAL_UNDEFINED = 8;
+  private static final int IDENTIFIER = 9;
+  private static final int VAR_ASSIGNMENT = 10;
+  private static final int METHOD_CALL = 11;
+  private static final int OBJECT_LITERAL = 12;
+  private static final int RETURN = 13;
+
+  // a growable array of bytes
+  private static final class Output {
+    private byte[] bytes = new byte[256];
+    private int size;
+
+    void write(int value) {
+      if (size == bytes.length) {
+        bytes = Arrays.copyOf(bytes, size << 1);
+      }
+      bytes[size++] = (byte) value;
+    }
+
+    void write(byte[] array) {
+      if (size + array.length > bytes.length) {
+        bytes = Arrays.copyOf(bytes, Math.max(size << 1, size + array.length));
+      }
+      System.arraycopy(array, 0, bytes, size, array.length);
+      size += array.length;
+    }
+
+    void writeVarint(int value) {
+      while ((value & ~0x7F) != 0) {
+        write((value & 0x7F) | 0x80);
+        value >>>= 7;
+      }
+      write(value);
+    }
+
+    byte[] toByteArray() {
+      return Arrays.copyOf(bytes, size);
+    }
+  }
+
+  private static final class Encoder {
+    private final Output tree = new Output();
+    private final LinkedHashMap<String, Integer> strings = new LinkedHashMap<>();
+
+    void string(String s) {
+      tree.writeVarint(strings.computeIfAbsent(s, _ -> strings.size()));
+    }
+
+    void header(int tag, int lineNumber) {
+      tree.write(tag);
+      tree.writeVarint(lineNumber);
+    }
+
+    void exprs(List<Expr> exprs) {
+      tree.writeVarint(exprs.size());
+      for (var expr : exprs) {
+        expr(expr);
+      }
+    }
+
+    void expr(Expr expr) {
+      switch (expr) {
+        case Block(List<Expr> exprs, int lineNumber) -> {
+          header(BLOCK, lineNumber);
+          exprs(exprs);
+        }
+        case FieldAccess(Expr receiver, String name, int lineNumber) -> {
+          header(FIELD_ACCESS, lineNumber);
+          expr(receiver);
+          string(name);
+        }
+        case FieldAssignment(Expr receiver, String name, Expr value, int lineNumber) -> {
+          header(FIELD_ASSIGNMENT, lineNumber);
+          expr(receiver);
+          string(name);
+          expr(value);
+        }
+        case Fun(String name, List<String> parameters, boolean toplevel, Block body, int lineNumber) -> {
+          header(FUN, lineNumber);
+          string(name);
+          tree.writeVarint(parameters.size());
+          for (var parameter : parameters) {
+            string(parameter);
+          }
+          tree.write(toplevel ? 1 : 0);
+          expr(body);
+        }
+        case Call(Expr qualifier, List<Expr> args, int lineNumber) -> {
+          header(CALL, lineNumber);
+          expr(qualifier);
+          exprs(args);
+        }
+        case If(Expr condition, Block trueBlock, Block falseBlock, int lineNumber) -> {
+          header(IF, lineNumber);
+          expr(condition);
+          expr(trueBlock);
+          expr(falseBlock);
+        }
+        case Literal(Object value, int lineNumber) -> {
+          switch (value) {
+            case Integer i -> {
+              header(LITERAL_INT, lineNumber);
+              tree.writeVarint((i << 1) ^ (i >> 31));  // zigzag
+            }
+            case String s -> {
+              header(LITERAL_STRING, lineNumber);
+              string(s);
+            }
+            default -> {
+              if (value != JSObject.UNDEFINED) {
+                throw new IllegalArgumentException("unknown literal " + value);
+              }
+              header(LITERAL_UNDEFINED, lineNumber);
+            }
+          }
+        }
+        case Identifier(String name, int lineNumber) -> {
+          header(IDENTIFIER, lineNumber);
+          string(name);
+        }
+        case VarAssignment(String name, Expr value, boolean declaration, int lineNumber) -> {
+          header(VAR_ASSIGNMENT, lineNumber);
+          string(name);
+          expr(value);
+          tree.write(declaration ? 1 : 0);
+        }
+        case MethodCall(Expr receiver, String name, List<Expr> args, int lineNumber) -> {
+          header(METHOD_CALL, lineNumber);
+          expr(receiver);
+          string(name);
+          exprs(args);
+        }
+        case ObjectLiteral(Map<String, Expr> initMap, int lineNumber) -> {
+          header(OBJECT_LITERAL, lineNumber);
+          tree.writeVarint(initMap.size());
+          for (var entry : initMap.entrySet()) {
+            string(entry.getKey());
+            expr(entry.getValue());
+          }
+        }
+        case Return(Expr value, int lineNumber) -> {
+          header(RETURN, lineNumber);
+          expr(value);
+        }
+      }
+    }
+  }
+
+  public static byte[] encode(Script script) {
+    requireNonNull(script);
+    var encoder = new Encoder();
+    encoder.expr(script.body());
+    var output = new Output();
+    output.write(MAGIC);
+    output.write(VERSION);
+    output.writeVarint(encoder.strings.size());
+    for (var string : encoder.strings.keySet()) {
+      var bytes = string.getBytes(UTF_8);
+      output.writeVarint(bytes.length);
+      output.write(bytes);
+    }
+    output.write(encoder.tree.toByteArray());
+    return output.toByteArray();
+  }
+
+  private static final class Decoder {
+    private final byte[] bytes;
+    private int index;
+    private String[] strings;
+    private int depth;
+
+    Decoder(byte[] bytes) {
+      this.bytes = bytes;
+    }
+
+    int read() {
+      if (index == bytes.length) {
+        throw new IllegalArgumentException("truncated script");
+      }
+      return bytes[index++] & 0xFF;
+    }
+
+    int readVarint() {
+      var value = 0;
+      for (var shift = 0; shift < 32; shift += 7) {
+        var b = read();
+        // the 5th byte only contains the 4 high bits of an int
+        if (shift == 28 && b > 0x0F) {
+          throw new IllegalArgumentException("invalid varint at " + index);
+        }
+        value |= (b & 0x7F) << shift;
+        if ((b & 0x80) == 0) {
+          return value;
+        }
+      }
+      throw new IllegalArgumentException("invalid varint at " + index);
+    }
+
+    // a count of elements or of bytes, each element uses at least one byte
+    int readCount() {
+      var count = readVarint();
+      if (count < 0 || count > bytes.length - index) {
+        throw new IllegalArgumentException("invalid count " + count + " at " + index);
+      }
+      return count;
+    }
+
+    boolean readBoolean() {
+      return read() != 0;
+    }
+
+    void header() {
+      for (var b : MAGIC) {
+        if (read() != b) {
+          throw new IllegalArgumentException("not a smalljs binary script");
+        }
+      }
+      var version = read();
+      if (version != VERSION) {
+        throw new IllegalArgumentException("unknown version " + version);
+      }
+      strings = new String[readCount()];
+      for (var i = 0; i < strings.length; i++) {
+        var length = readCount();
+        strings[i] = new String(bytes, index, length, UTF_8);
+        index += length;
+      }
+    }
+
+    String string() {
+      var stringIndex = readVarint();
+      if (stringIndex < 0 || stringIndex >= strings.length) {
+        throw new IllegalArgumentException("invalid string index " + stringIndex);
+      }
+      return strings[stringIndex];
+    }
+
+    List<Expr> exprs() {
+      var exprs = new Expr[readCount()];
+      for (var i = 0; i < exprs.length; i++) {
+        exprs[i] = expr();
+      }
+      return List.of(exprs);
+    }
+
+    Block block() {
+      if (expr() instanceof Block block) {
+        return block;
+      }
+      throw new IllegalArgumentException("block expected at " + index);
+    }
+
+    Expr expr() {
+      if (++depth > MAX_DEPTH) {
+        throw new IllegalArgumentException("expressions nested too deeply at " + index);
+      }
+      var tag = read();
+      var lineNumber = readVarint();
+      var expr = switch (tag) {
+        case BLOCK -> new Block(exprs(), lineNumber);
+        case FIELD_ACCESS -> new FieldAccess(expr(), string(), lineNumber);
+        case FIELD_ASSIGNMENT -> new FieldAssignment(expr(), string(), expr(), lineNumber);
+        case FUN -> {
+          var name = string();
+          var parameters = new String[readCount()];
+          for (var i = 0; i < parameters.length; i++) {
+            parameters[i] = string();
+          }
+          var toplevel = readBoolean();
+          yield new Fun(name, List.of(parameters), toplevel, block(), lineNumber);
+        }
+        case CALL -> new Call(expr(), exprs(), lineNumber);
+        case IF -> new If(expr(), block(), block(), lineNumber);
+        case LITERAL_INT -> {
+          var value = readVarint();
+          yield new Literal((value >>> 1) ^ -(value & 1), lineNumber);  // zigzag
+        }
+        case LITERAL_STRING -> new Literal(string(), lineNumber);
+        case LITERAL_UNDEFINED -> new Literal(JSObject.UNDEFINED, lineNumber);
+        case IDENTIFIER -> new Identifier(string(), lineNumber);
+        case VAR_ASSIGNMENT -> new VarAssignment(string(), expr(), readBoolean(), lineNumber);
+        case METHOD_CALL -> new MethodCall(expr(), string(), exprs(), lineNumber);
+        case OBJECT_LITERAL -> {
+          var size = readCount();
+          var initMap = new LinkedHashMap<String, Expr>();
+          for (var i = 0; i < size; i++) {
+            initMap.put(string(), expr());
+          }
+          yield new ObjectLiteral(initMap, lineNumber);
+        }
+        case RETURN -> new Return(expr(), lineNumber);
+        default -> throw new IllegalArgumentException("unknown tag " + tag + " at " + (index - 1));
+      };
+      depth--;
+      return expr;
+    }
+  }
+
+  public static Script decode(byte[] bytes) {
+    requireNonNull(bytes);
+    var decoder = new Decoder(bytes);
+    decoder.header();
+    var body = decoder.block();
+    if (decoder.index != bytes.length) {
+      throw new IllegalArgumentException("trailing bytes at " + decoder.index);
+    }
+    return new Script(body);
+  }
+}
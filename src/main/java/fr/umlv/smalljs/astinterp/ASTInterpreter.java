@@ -1,28 +1,37 @@
 package fr.umlv.smalljs.astinterp;
 
 import fr.umlv.smalljs.ast.Expr;
-import fr.umlv.smalljs.ast.Expr.Block;
-import fr.umlv.smalljs.ast.Expr.Call;
-import fr.umlv.smalljs.ast.Expr.FieldAccess;
-import fr.umlv.smalljs.ast.Expr.FieldAssignment;
-import fr.umlv.smalljs.ast.Expr.Fun;
-import fr.umlv.smalljs.ast.Expr.Identifier;
-import fr.umlv.smalljs.ast.Expr.If;
-import fr.umlv.smalljs.ast.Expr.Literal;
-import fr.umlv.smalljs.ast.Expr.MethodCall;
-import fr.umlv.smalljs.ast.Expr.ObjectLiteral;
-import fr.umlv.smalljs.ast.Expr.Return;
-import fr.umlv.smalljs.ast.Expr.VarAssignment;
 import fr.umlv.smalljs.ast.Script;
+import fr.umlv.smalljs.astinterp.Node.Block;
+import fr.umlv.smalljs.astinterp.Node.Call;
+import fr.umlv.smalljs.astinterp.Node.FieldAccess;
+import fr.umlv.smalljs.astinterp.Node.FieldAssignment;
+import fr.umlv.smalljs.astinterp.Node.Fun;
+import fr.umlv.smalljs.astinterp.Node.GlobalLoad;
+import fr.umlv.smalljs.astinterp.Node.GlobalStore;
+import fr.umlv.smalljs.astinterp.Node.If;
+import fr.umlv.smalljs.astinterp.Node.Literal;
+import fr.umlv.smalljs.astinterp.Node.LocalLoad;
+import fr.umlv.smalljs.astinterp.Node.LocalStore;
+import fr.umlv.smalljs.astinterp.Node.MethodCall;
+import fr.umlv.smalljs.astinterp.Node.ObjectLiteral;
+import fr.umlv.smalljs.astinterp.Node.Return;
+import fr.umlv.smalljs.rt.Builtins;
 import fr.umlv.smalljs.rt.Failure;
 import fr.umlv.smalljs.rt.JSObject;
+import fr.umlv.smalljs.rt.Trace;
 
 import java.io.PrintStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodType;
 import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 import java.util.stream.Collectors;
 
+import static fr.umlv.smalljs.astinterp.Node.FIRST_PARAMETER_INDEX;
+import static fr.umlv.smalljs.astinterp.Node.PARENT_INDEX;
+import static fr.umlv.smalljs.astinterp.Node.RETURN_INDEX;
+import static fr.umlv.smalljs.astinterp.Node.THIS_INDEX;
 import static fr.umlv.smalljs.rt.JSObject.UNDEFINED;
 import static java.util.stream.Collectors.joining;
 
@@ -47,6 +56,8 @@ X
  */
 
 public final class ASTInterpreter {
+  private static final int TRACE = Trace.level("ast");
+
   private static JSObject asJSObject(Object value, int lineNumber) {
     if (!(value instanceof JSObject jsObject)) {
       throw new Failure("at line " + lineNumber + ", type error " + value + " is not a JSObject");
@@ -54,169 +65,268 @@ public final class ASTInterpreter {
     return jsObject;
   }
 
-  private static Object execute(Expr.Block body, JSObject env) {
+  private static Object execute(Expr.Block body, JSObject globalEnv) {
     // initialize declared variables to UNDEFINED
-    visitVariable(body, env);
-    // interpret the AST
-    return visit(body, env);
+    visitVariable(body, globalEnv);
+    // resolve the local variables
+    var node = Resolver.resolve(body, globalEnv);
+    // interpret the resolved tree, there is no frame at top level
+    return visit(node, null);
   }
 
   private static void visitVariable(Expr expression, JSObject env) {
     switch (expression) {
-      case Block(List<Expr> exprs, _) -> {
+      case Expr.Block(List<Expr> exprs, _) -> {
         for (var expr : exprs) {
           visitVariable(expr, env);
         }
       }
-      case VarAssignment(String name, _, boolean declaration, _) -> {
+      case Expr.VarAssignment(String name, _, boolean declaration, _) -> {
         if (declaration) {
           env.register(name, UNDEFINED);
         }
       }
-      case If(_, Block trueBlock, Block falseBlock, _) -> {
+      case Expr.If(_, Expr.Block trueBlock, Expr.Block falseBlock, _) -> {
         visitVariable(trueBlock, env);
         visitVariable(falseBlock, env);
       }
-      case Literal _, Call _, Identifier _, Fun _, Return _, ObjectLiteral _, FieldAccess _,
-           FieldAssignment _, MethodCall _ -> {
+      case Expr.Literal _, Expr.Call _, Expr.Identifier _, Expr.Fun _, Expr.Return _, Expr.ObjectLiteral _,
+           Expr.FieldAccess _, Expr.FieldAssignment _, Expr.MethodCall _ -> {
         // do nothing
       }
     };
   }
 
-  static Object visit(Expr expression, JSObject env) {
-    return switch (expression) {
-      case Block(List<Expr> exprs, int lineNumber) -> {
-        for (var expr: exprs) {
-          visit(expr, env);
+  // the completion signal of a return, the returned value is stored in the frame
+  private static final Object RETURN = new Object() {
+    @Override
+    public String toString() {
+      return "return";
+    }
+  };
+
+  private static Object[] visitAll(Node[] nodes, Object[] frame) {
+    var values = new Object[nodes.length];
+    for (var i = 0; i < nodes.length; i++) {
+      values[i] = visit(nodes[i], frame);
+    }
+    return values;
+  }
+
+  // the type of the method handle of a function created from an Invoker
+  private static final MethodType INVOKER_TYPE = MethodType.methodType(Object.class, Object.class, Object[].class);
+
+  // the method handle of the function that takes the arguments as an array or null
+  private static MethodHandle arrayInvoker(JSObject function) {
+    var mh = function.methodHandle();
+    if (!mh.isVarargsCollector() || !mh.type().equals(INVOKER_TYPE)) {
+      return null;
+    }
+    return mh.asFixedArity();
+  }
+
+  private static Object call(Call call, JSObject function, Object[] arguments) {
+    if (function != call.target) {
+      // re-specialize the call to the new function, or give up if there are too many functions
+      if (call.misses == Call.MAX_MISSES) {
+        return function.invoke(UNDEFINED, arguments);
+      }
+      if (call.target != null) {
+        call.misses++;
+      }
+      call.target = function;
+      call.invoker = arrayInvoker(function);
+    }
+    var invoker = call.invoker;
+    if (invoker == null) {
+      return function.invoke(UNDEFINED, arguments);
+    }
+    try {
+      return (Object) invoker.invokeExact((Object) UNDEFINED, arguments);
+    } catch(RuntimeException | Error e) {
+      throw e;
+    } catch (Throwable e) {
+      throw new Failure(e.getMessage(), e);
+    }
+  }
+
+  private static Object globalLoad(GlobalLoad globalLoad) {
+    var switchPoint = globalLoad.switchPoint;
+    if (switchPoint != null && !switchPoint.hasBeenInvalidated()) {
+      return globalLoad.value;
+    }
+    var cell = globalLoad.cell;
+    if (cell == null) {
+      var globalEnv = globalLoad.globalEnv;
+      if (globalEnv.layoutSlot(globalLoad.name) == -1) {
+        throw new Failure("at line " + globalLoad.lineNumber + ", variable " + globalLoad.name + " is not defined");
+      }
+      cell = globalLoad.cell = globalEnv.cell(globalLoad.name);
+    }
+    // a reassigned global variable is read from its cell
+    if (!cell.stable()) {
+      globalLoad.switchPoint = null;
+      globalLoad.value = null;
+      return cell.value();
+    }
+    var value = cell.value();
+    globalLoad.switchPoint = cell.switchPoint();
+    globalLoad.value = value;
+    return value;
+  }
+
+  private static Object fieldAccess(FieldAccess fieldAccess, JSObject obj) {
+    var layout = obj.layout();
+    if (layout == fieldAccess.layout) {
+      return obj.fastAccess(fieldAccess.slot);
+    }
+    var slot = obj.layoutSlot(fieldAccess.name);
+    if (slot == -1) {
+      // the field is in a prototype or does not exist
+      return obj.lookupOrDefault(fieldAccess.name, UNDEFINED);
+    }
+    fieldAccess.layout = layout;
+    fieldAccess.slot = slot;
+    return obj.fastAccess(slot);
+  }
+
+  private static Object lookupMethod(MethodCall methodCall, JSObject obj) {
+    var layout = obj.layout();
+    if (layout == methodCall.layout) {
+      return obj.fastAccess(methodCall.slot);
+    }
+    var slot = obj.layoutSlot(methodCall.name);
+    if (slot == -1) {
+      // the method is in a prototype or does not exist
+      return obj.lookupOrDefault(methodCall.name, null);
+    }
+    methodCall.layout = layout;
+    methodCall.slot = slot;
+    return obj.fastAccess(slot);
+  }
+
+  private static Object[] frame(Object[] frame, int depth) {
+    for (var i = 0; i < depth; i++) {
+      frame = (Object[]) frame[PARENT_INDEX];
+    }
+    return frame;
+  }
+
+  static Object visit(Node node, Object[] frame) {
+    return switch (node) {
+      case Block(Node[] nodes) -> {
+        for (var child: nodes) {
+          // stop at the first return
+          if (visit(child, frame) == RETURN) {
+            yield RETURN;
+          }
         }
         yield UNDEFINED;
       }
-      case Literal(Object value, int lineNumber) -> value;
-      case Call(Expr qualifier, List<Expr> args, int lineNumber) -> {
-        var mayBeFunction = visit(qualifier, env);
-        var function = asJSObject(mayBeFunction, lineNumber);
-        var arguments = args.stream()
-                        .map(arg -> visit(arg, env))
-                                .toArray();
-        yield function.invoke(UNDEFINED, arguments);
-      }
-      case Identifier(String name, int lineNumber) -> {
-        var value = env.lookupOrDefault(name, null);
-        if (value == null) {
-          throw new Failure("at line " + lineNumber + ", variable " + name + " is not defined");
-        }
+      case Literal(Object value) -> value;
+      case Call call -> {
+        var mayBeFunction = visit(call.qualifier, frame);
+        var function = asJSObject(mayBeFunction, call.lineNumber);
+        var arguments = visitAll(call.args, frame);
+        yield call(call, function, arguments);
+      }
+      case LocalLoad(int depth, int index) -> frame(frame, depth)[index];
+      case LocalStore(int depth, int index, Node valueNode) -> {
+        var value = visit(valueNode, frame);
+        frame(frame, depth)[index] = value;
         yield value;
       }
-      case VarAssignment(String name, Expr expr, _, int lineNumber) -> {
-        var value = visit(expr, env);
-        var oldValue = env.lookupOrDefault(name, null);
-        if (oldValue == null) {
+      case GlobalLoad globalLoad -> globalLoad(globalLoad);
+      case GlobalStore(JSObject globalEnv, String name, Node valueNode, boolean declaration, int lineNumber) -> {
+        var value = visit(valueNode, frame);
+        if (!declaration && globalEnv.lookupOrDefault(name, null) == null) {
           throw new Failure("at line " + lineNumber + ", variable " + name + " is not defined");
         }
-        env.register(name, value);
+        globalEnv.register(name, value);
         yield value;
       }
-      case Fun(String name, List<String> parameters, boolean toplevel, Block body, int lineNumber) -> {
+      case Fun(String name, int parameterCount, int frameSize, Node body, int lineNumber) -> {
         JSObject.Invoker invoker = new JSObject.Invoker() {
           @Override
           public Object invoke(Object receiver, Object... args) {
             // check the arguments length
-            if (args.length != parameters.size()) {
-              throw new Failure("at line " + lineNumber + ", function " + name + " called with " + args.length + " arguments, expected " + parameters.size());
+            if (args.length != parameterCount) {
+              throw new Failure("at line " + lineNumber + ", function " + name + " called with " + args.length + " arguments, expected " + parameterCount);
             }
-            // create a new environment
-            var newEnv = JSObject.newEnv(env);
+            // create a new frame linked to the frame of the function creation
+            var newFrame = new Object[frameSize];
+            newFrame[PARENT_INDEX] = frame;
             // add this and all the parameters
-            newEnv.register("this", receiver);
-            for (var i = 0; i < parameters.size(); i++) {
-              newEnv.register(parameters.get(i), args[i]);
-            }
-            // execute the body
-            try {
-              execute(body, newEnv);
-            } catch (ReturnError error) {
-              return error.getValue();
-            }
-            return UNDEFINED;
+            newFrame[THIS_INDEX] = receiver;
+            newFrame[RETURN_INDEX] = UNDEFINED;
+            System.arraycopy(args, 0, newFrame, FIRST_PARAMETER_INDEX, parameterCount);
+            // initialize the local variables to UNDEFINED
+            Arrays.fill(newFrame, FIRST_PARAMETER_INDEX + parameterCount, frameSize, UNDEFINED);
+            // execute the body, the returned value is UNDEFINED if there is no return
+            visit(body, newFrame);
+            return newFrame[RETURN_INDEX];
           }
         };
-//         create the JS function with the invoker
-        var function = JSObject.newFunction(name, invoker);
-//         register it into the global env if it's a toplevel
-        if (toplevel) {
-          env.register(name, function);
+        // create the JS function with the invoker
+        // (a function declaration is stored by the enclosing node)
+        yield JSObject.newFunction(name, invoker);
+      }
+      case Return(Node valueNode) -> {
+        var value = visit(valueNode, frame);
+        // a return at top level just stops the script
+        if (frame != null) {
+          frame[RETURN_INDEX] = value;
         }
-//         yield the function
-        yield function;
-      }
-      case Return(Expr expr, int lineNumber) -> {
-        var value = visit(expr, env);
-        throw new ReturnError(value);
-      }
-      case If(Expr condition, Block trueBlock, Block falseBlock, int lineNumber) -> {
-        var value = visit(condition, env);
-        if (value instanceof Integer conditionInt && conditionInt == 0) {
-          visit(falseBlock, env);
-        } else {
-          visit(trueBlock, env);
+        yield RETURN;
+      }
+      case If(Node condition, Node trueBlock, Node falseBlock) -> {
+        var value = visit(condition, frame);
+        // propagate the completion signal of a return
+        if (value == Boolean.FALSE || (value instanceof Integer conditionInt && conditionInt == 0)) {
+          yield visit(falseBlock, frame);
         }
-        yield UNDEFINED;
+        yield visit(trueBlock, frame);
       }
-      case ObjectLiteral(Map<String, Expr> initMap, int lineNumber) -> {
-        var obj = JSObject.newObject(null);
-        initMap.forEach((k, v) -> {
-          var value = visit(v, env);
-          obj.register(k, value);
-        });
-
+      case ObjectLiteral(String[] keys, Node[] values) -> {
+        var obj = JSObject.newObject(null, keys.length);
+        for (var i = 0; i < keys.length; i++) {
+          var value = visit(values[i], frame);
+          obj.register(keys[i], value);
+        }
         yield obj;
       }
-      case FieldAccess(Expr receiver, String name, int lineNumber) -> {
-        var obj = asJSObject(visit(receiver, env), lineNumber);
-
-        yield obj.lookupOrDefault(name, UNDEFINED);
+      case FieldAccess fieldAccess -> {
+        var obj = asJSObject(visit(fieldAccess.receiver, frame), fieldAccess.lineNumber);
+        yield fieldAccess(fieldAccess, obj);
       }
-      case FieldAssignment(Expr receiver, String name, Expr expr, int lineNumber) -> {
-        var obj = asJSObject(visit(receiver, env), lineNumber);
-        obj.register(name, expr);
+      case FieldAssignment(Node receiver, String name, Node valueNode, int lineNumber) -> {
+        var obj = asJSObject(visit(receiver, frame), lineNumber);
+        var value = visit(valueNode, frame);
+        obj.register(name, value);
 
         yield obj;
       }
-      case MethodCall(Expr receiver, String name, List<Expr> args, int lineNumber) -> {
-        var obj = asJSObject(visit(receiver, env), lineNumber);
-        var mayBeMethod = obj.lookupOrDefault(name, null);
+      case MethodCall methodCall -> {
+        var obj = asJSObject(visit(methodCall.receiver, frame), methodCall.lineNumber);
+        var mayBeMethod = lookupMethod(methodCall, obj);
         if (!(mayBeMethod instanceof JSObject method)) {
-          throw new Failure("at line " + lineNumber + ", " + name + " is not a method");
+          throw new Failure("at line " + methodCall.lineNumber + ", " + methodCall.name + " is not a method");
         }
-        var arguments = args.stream()
-                .map(arg -> visit(arg, env))
-                .toArray();
+        var arguments = visitAll(methodCall.args, frame);
         yield method.invoke(obj, arguments);
       }
     };
   }
 
-  @SuppressWarnings("unchecked")
   private static JSObject createGlobalEnv(PrintStream outStream) {
-    var globalEnv = JSObject.newEnv(null);
-    globalEnv.register("globalThis", globalEnv);
+    var globalEnv = Builtins.newGlobalEnv();
     globalEnv.register("print", JSObject.newFunction("print", (_, args) -> {
-      System.err.println("print called with " + Arrays.toString(args));
+      if (TRACE >= Trace.INFO) {
+        System.err.println("print called with " + Arrays.toString(args));
+      }
       outStream.println(Arrays.stream(args).map(Object::toString).collect(Collectors.joining(" ")));
       return UNDEFINED;
     }));
-    globalEnv.register("+", JSObject.newFunction("+", (_, args) -> (Integer) args[0] + (Integer) args[1]));
-    globalEnv.register("-", JSObject.newFunction("-", (_, args) -> (Integer) args[0] - (Integer) args[1]));
-    globalEnv.register("/", JSObject.newFunction("/", (_, args) -> (Integer) args[0] / (Integer) args[1]));
-    globalEnv.register("*", JSObject.newFunction("*", (_, args) -> (Integer) args[0] * (Integer) args[1]));
-    globalEnv.register("%", JSObject.newFunction("%", (_, args) -> (Integer) args[0] % (Integer) args[1]));
-    globalEnv.register("==", JSObject.newFunction("==", (_, args) -> args[0].equals(args[1]) ? 1 : 0));
-    globalEnv.register("!=", JSObject.newFunction("!=", (_, args) -> !args[0].equals(args[1]) ? 1 : 0));
-    globalEnv.register("<", JSObject.newFunction("<", (_, args) -> (((Comparable<Object>) args[0]).compareTo(args[1]) < 0) ? 1 : 0));
-    globalEnv.register("<=", JSObject.newFunction("<=", (_, args) -> (((Comparable<Object>) args[0]).compareTo(args[1]) <= 0) ? 1 : 0));
-    globalEnv.register(">", JSObject.newFunction(">", (_, args) -> (((Comparable<Object>) args[0]).compareTo(args[1]) > 0) ? 1 : 0));
-    globalEnv.register(">=", JSObject.newFunction(">=", (_, args) -> (((Comparable<Object>) args[0]).compareTo(args[1]) >= 0) ? 1 : 0));
     return globalEnv;
   }
 
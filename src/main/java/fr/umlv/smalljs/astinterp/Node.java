@@ -0,0 +1,110 @@
+package fr.umlv.smalljs.astinterp;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.SwitchPoint;
+
+import fr.umlv.smalljs.rt.JSObject;
+import fr.umlv.smalljs.rt.PropertyCell;
+
+/**
+ * The tree executed by the {@link ASTInterpreter}, created from the {@link fr.umlv.smalljs.ast.Expr}
+ * by the {@link Resolver}.
+ * Unlike an Expr, a local variable is resolved to a (depth, index) coordinate in the frames,
+ * a frame is an Object[] with the enclosing frame at index 0, {@code this} at index 1,
+ * the returned value at index 2, then the parameters and the local variables.
+ * A variable that is not declared in a function is a global variable.
+ *
+ * The nodes Call, GlobalLoad, FieldAccess and MethodCall are not records, they specialize themselves
+ * on execution by caching the result of the lookup they do (see {@link ASTInterpreter#visit(Node, Object[])}).
+ */
+sealed interface Node {
+  int PARENT_INDEX = 0;
+  int THIS_INDEX = 1;
+  int RETURN_INDEX = 2;
+  int FIRST_PARAMETER_INDEX = 3;
+
+  record Block(Node[] nodes) implements Node {}
+  record Literal(Object value) implements Node {}
+  record LocalLoad(int depth, int index) implements Node {}
+  record LocalStore(int depth, int index, Node value) implements Node {}
+
+  // caches the value of a stable global variable until the switch point of its cell is invalidated,
+  // if the variable is reassigned, caches the cell
+  final class GlobalLoad implements Node {
+    final JSObject globalEnv;
+    final String name;
+    final int lineNumber;
+    PropertyCell cell;
+    SwitchPoint switchPoint;
+    Object value;
+
+    GlobalLoad(JSObject globalEnv, String name, int lineNumber) {
+      this.globalEnv = globalEnv;
+      this.name = name;
+      this.lineNumber = lineNumber;
+    }
+  }
+
+  // if declaration is false, the global variable must exist
+  record GlobalStore(JSObject globalEnv, String name, Node value, boolean declaration, int lineNumber) implements Node {}
+  record Fun(String name, int parameterCount, int frameSize, Node body, int lineNumber) implements Node {}
+
+  // caches the last called function and its method handle taking the arguments as an array
+  // (null if the function has no such method handle),
+  // after too many different functions, calls them without caching
+  final class Call implements Node {
+    static final int MAX_MISSES = 8;
+
+    final Node qualifier;
+    final Node[] args;
+    final int lineNumber;
+    JSObject target;
+    MethodHandle invoker;
+    int misses;
+
+    Call(Node qualifier, Node[] args, int lineNumber) {
+      this.qualifier = qualifier;
+      this.args = args;
+      this.lineNumber = lineNumber;
+    }
+  }
+
+  record Return(Node value) implements Node {}
+  record If(Node condition, Node trueBlock, Node falseBlock) implements Node {}
+  record ObjectLiteral(String[] keys, Node[] values) implements Node {}
+
+  // caches the layout of the last receiver and the slot of the field
+  final class FieldAccess implements Node {
+    final Node receiver;
+    final String name;
+    final int lineNumber;
+    Object layout;
+    int slot;
+
+    FieldAccess(Node receiver, String name, int lineNumber) {
+      this.receiver = receiver;
+      this.name = name;
+      this.lineNumber = lineNumber;
+    }
+  }
+
+  record FieldAssignment(Node receiver, String name, Node value, int lineNumber) implements Node {}
+
+  // caches the layout of the last receiver and the slot of the method,
+  // a method found in a prototype is not cached
+  final class MethodCall implements Node {
+    final Node receiver;
+    final String name;
+    final Node[] args;
+    final int lineNumber;
+    Object layout;
+    int slot;
+
+    MethodCall(Node receiver, String name, Node[] args, int lineNumber) {
+      this.receiver = receiver;
+      this.name = name;
+      this.args = args;
+      this.lineNumber = lineNumber;
+    }
+  }
+}
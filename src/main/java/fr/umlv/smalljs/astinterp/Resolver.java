@@ -0,0 +1,152 @@
+package fr.umlv.smalljs.astinterp;
+
+import static fr.umlv.smalljs.astinterp.Node.FIRST_PARAMETER_INDEX;
+import static fr.umlv.smalljs.astinterp.Node.THIS_INDEX;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import fr.umlv.smalljs.ast.Expr;
+import fr.umlv.smalljs.ast.Expr.Block;
+import fr.umlv.smalljs.ast.Expr.Call;
+import fr.umlv.smalljs.ast.Expr.FieldAccess;
+import fr.umlv.smalljs.ast.Expr.FieldAssignment;
+import fr.umlv.smalljs.ast.Expr.Fun;
+import fr.umlv.smalljs.ast.Expr.Identifier;
+import fr.umlv.smalljs.ast.Expr.If;
+import fr.umlv.smalljs.ast.Expr.Literal;
+import fr.umlv.smalljs.ast.Expr.MethodCall;
+import fr.umlv.smalljs.ast.Expr.ObjectLiteral;
+import fr.umlv.smalljs.ast.Expr.Return;
+import fr.umlv.smalljs.ast.Expr.VarAssignment;
+import fr.umlv.smalljs.rt.JSObject;
+
+/**
+ * Resolves the variables of a script to a (depth, index) coordinate in the frames
+ * and creates the corresponding {@link Node} tree.
+ * The variables of the script itself (the top level) are global variables.
+ */
+final class Resolver {
+  private Resolver() {
+    throw new AssertionError();
+  }
+
+  // the slots of the variables of a function, parent is null for the top level functions
+  private record Scope(Scope parent, HashMap<String, Integer> slots) {}
+
+  static Node resolve(Block script, JSObject globalEnv) {
+    return resolve(script, null, globalEnv);
+  }
+
+  // the slots contains "this", the other variables start at FIRST_PARAMETER_INDEX,
+  // a parameter hidden by another parameter with the same name still uses a slot, so the next index follows the highest slot
+  private static int nextIndex(HashMap<String, Integer> slots) {
+    var max = FIRST_PARAMETER_INDEX - 1;
+    for (var index : slots.values()) {
+      max = Math.max(max, index);
+    }
+    return max + 1;
+  }
+
+  private static void visitVariable(Expr expression, HashMap<String, Integer> slots) {
+    switch (expression) {
+      case Block(List<Expr> exprs, _) -> {
+        for (var expr : exprs) {
+          visitVariable(expr, slots);
+        }
+      }
+      case VarAssignment(String name, _, boolean declaration, _) -> {
+        if (declaration) {
+          slots.putIfAbsent(name, nextIndex(slots));
+        }
+      }
+      case Fun(String name, _, boolean toplevel, _, _) -> {
+        if (toplevel) {
+          slots.putIfAbsent(name, nextIndex(slots));
+        }
+      }
+      case If(_, Block trueBlock, Block falseBlock, _) -> {
+        visitVariable(trueBlock, slots);
+        visitVariable(falseBlock, slots);
+      }
+      case Literal _, Call _, Identifier _, Return _, ObjectLiteral _, FieldAccess _,
+           FieldAssignment _, MethodCall _ -> {
+        // do nothing
+      }
+    }
+  }
+
+  private static Node[] resolveAll(List<Expr> exprs, Scope scope, JSObject globalEnv) {
+    return exprs.stream().map(expr -> resolve(expr, scope, globalEnv)).toArray(Node[]::new);
+  }
+
+  // find the coordinate of a local variable or null if it's a global variable
+  private static int[] coordinate(String name, Scope scope) {
+    var depth = 0;
+    for (var current = scope; current != null; current = current.parent) {
+      var index = current.slots.get(name);
+      if (index != null) {
+        return new int[] { depth, index };
+      }
+      depth++;
+    }
+    return null;
+  }
+
+  private static Node store(String name, Node value, boolean declaration, int lineNumber, Scope scope, JSObject globalEnv) {
+    var coordinate = coordinate(name, scope);
+    if (coordinate == null) {
+      return new Node.GlobalStore(globalEnv, name, value, declaration, lineNumber);
+    }
+    return new Node.LocalStore(coordinate[0], coordinate[1], value);
+  }
+
+  private static Node resolve(Expr expression, Scope scope, JSObject globalEnv) {
+    return switch (expression) {
+      case Block(List<Expr> exprs, _) -> new Node.Block(resolveAll(exprs, scope, globalEnv));
+      case Literal(Object value, _) -> new Node.Literal(value);
+      case Call(Expr qualifier, List<Expr> args, int lineNumber) ->
+          new Node.Call(resolve(qualifier, scope, globalEnv), resolveAll(args, scope, globalEnv), lineNumber);
+      case Identifier(String name, int lineNumber) -> {
+        var coordinate = coordinate(name, scope);
+        if (coordinate == null) {
+          yield new Node.GlobalLoad(globalEnv, name, lineNumber);
+        }
+        yield new Node.LocalLoad(coordinate[0], coordinate[1]);
+      }
+      case VarAssignment(String name, Expr expr, boolean declaration, int lineNumber) ->
+        // a declared top level variable is registered before the script starts
+        store(name, resolve(expr, scope, globalEnv), false, lineNumber, scope, globalEnv);
+      case Fun(String name, List<String> parameters, boolean toplevel, Block body, int lineNumber) -> {
+        var slots = new HashMap<String, Integer>();
+        slots.put("this", THIS_INDEX);
+        // one slot per parameter, if two parameters have the same name, the last one wins
+        for (var i = 0; i < parameters.size(); i++) {
+          slots.put(parameters.get(i), FIRST_PARAMETER_INDEX + i);
+        }
+        visitVariable(body, slots);
+        var functionScope = new Scope(scope, slots);
+        var frameSize = nextIndex(slots);
+        var fun = new Node.Fun(name, parameters.size(), frameSize, resolve(body, functionScope, globalEnv), lineNumber);
+        // a function declaration is stored in the enclosing scope
+        yield toplevel ? store(name, fun, true, lineNumber, scope, globalEnv) : fun;
+      }
+      case Return(Expr expr, _) -> new Node.Return(resolve(expr, scope, globalEnv));
+      case If(Expr condition, Block trueBlock, Block falseBlock, _) ->
+          new Node.If(resolve(condition, scope, globalEnv),
+              resolve(trueBlock, scope, globalEnv), resolve(falseBlock, scope, globalEnv));
+      case ObjectLiteral(Map<String, Expr> initMap, _) -> {
+        var keys = initMap.keySet().toArray(String[]::new);
+        var values = initMap.values().stream().map(expr -> resolve(expr, scope, globalEnv)).toArray(Node[]::new);
+        yield new Node.ObjectLiteral(keys, values);
+      }
+      case FieldAccess(Expr receiver, String name, int lineNumber) ->
+          new Node.FieldAccess(resolve(receiver, scope, globalEnv), name, lineNumber);
+      case FieldAssignment(Expr receiver, String name, Expr expr, int lineNumber) ->
+          new Node.FieldAssignment(resolve(receiver, scope, globalEnv), name, resolve(expr, scope, globalEnv), lineNumber);
+      case MethodCall(Expr receiver, String name, List<Expr> args, int lineNumber) ->
+          new Node.MethodCall(resolve(receiver, scope, globalEnv), name, resolveAll(args, scope, globalEnv), lineNumber);
+    };
+  }
+}
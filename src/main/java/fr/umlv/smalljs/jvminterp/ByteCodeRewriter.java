@@ -5,13 +5,18 @@ import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.objectweb.asm.Opcodes.*;
 
 import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.lang.invoke.CallSite;
 import java.lang.invoke.MethodHandle;
 import java.lang.invoke.MethodHandles;
 import java.lang.invoke.MethodHandles.Lookup;
 import java.lang.invoke.MethodType;
+import java.lang.invoke.MutableCallSite;
+import java.util.BitSet;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import fr.umlv.smalljs.rt.Failure;
 import org.objectweb.asm.*;
@@ -30,25 +35,138 @@ import fr.umlv.smalljs.ast.Expr.ObjectLiteral;
 import fr.umlv.smalljs.ast.Expr.Return;
 import fr.umlv.smalljs.ast.Expr.VarAssignment;
 import fr.umlv.smalljs.rt.JSObject;
+import fr.umlv.smalljs.rt.Trace;
 import org.objectweb.asm.util.CheckClassAdapter;
 
 public final class ByteCodeRewriter {
-  static JSObject createFunction(String name, List<String> parameters, Block body, JSObject global) {
+  private static final int TRACE = Trace.level("jvm");
+
+  // if the system property smalljs.jvm.verify is true, the generated classes are checked by ASM
+  private static final boolean VERIFY = Boolean.getBoolean("smalljs.jvm.verify");
+
+  // if compileThreshold is positive, the function is interpreted until it is called compileThreshold times,
+  // otherwise it is compiled now
+  static JSObject createFunction(String name, List<String> parameters, Block body, JSObject global, JVMStats stats,
+                                 CodeCache codeCache, int compileThreshold) {
+    if (compileThreshold > 0) {
+      var tiered = new TieredFunction(name, parameters, body, global, stats, codeCache, compileThreshold);
+      return JSObject.newFunction(name, tiered.dynamicInvoker());
+    }
+    var mh = compile(name, parameters, body, global, stats, codeCache, compileThreshold, new BitSet());
+    var candidates = specializationCandidates(parameters, body);
+    if (candidates.isEmpty()) {
+      return JSObject.newFunction(name, mh);
+    }
+    var callSite = new MutableCallSite(mh.type());
+    new TypeProfile(name, parameters, body, global, stats, codeCache, compileThreshold, callSite, mh, candidates);
+    return JSObject.newFunction(name, callSite.dynamicInvoker());
+  }
+
+  // the slots of the parameters that are never assigned, so can be specialized to int,
+  // empty if the specialization is disabled
+  static BitSet specializationCandidates(List<String> parameters, Block body) {
+    var candidates = new BitSet();
+    if (TypeProfile.THRESHOLD < 0) {
+      return candidates;
+    }
+    var assigned = new HashSet<String>();
+    visitAssignment(body, assigned);
+    for (var i = 0; i < parameters.size(); i++) {
+      if (!assigned.contains(parameters.get(i))) {
+        candidates.set(1 + i);
+      }
+    }
+    return candidates;
+  }
+
+  // compile the function, the local variables in intSlots are typed int instead of Object,
+  // if codeCache is not null, the class is loaded from the cache or stored in it
+  static MethodHandle compile(String name, List<String> parameters, Block body, JSObject global, JVMStats stats,
+                              CodeCache codeCache, int compileThreshold, BitSet intSlots) {
+    var methodType = genericMethodType(1 + parameters.size());
+    for (var slot = intSlots.nextSetBit(0); slot >= 0; slot = intSlots.nextSetBit(slot + 1)) {
+      methodType = methodType.changeParameterType(slot, int.class);
+    }
+
+    // register the nested functions before generating the code,
+    // so a class loaded from the cache finds them with the same ids
+    var dictionary = new FunDictionary();
+    visitFun(body, dictionary);
+    var classData = new FunClassData(dictionary, global, stats, codeCache, compileThreshold);
+
+    MethodHandle mh = null;
+    String key = null;
+    if (codeCache != null) {
+      key = CodeCache.key(name, parameters, body, intSlots);
+      var instrs = codeCache.load(key);
+      if (instrs != null) {
+        mh = loadCachedFunction(instrs, classData, name, methodType);
+        if (mh != null) {
+          stats.codeCacheHit();
+        }
+      }
+    }
+    if (mh == null) {
+      var instrs = generate(name, parameters, body, intSlots, methodType, dictionary);
+      if (codeCache != null) {
+        codeCache.store(key, instrs);  // replace the entry if it was not valid
+      }
+      var functionLookup = defineHiddenClass(instrs, classData);
+      try {
+        mh = functionLookup.findStatic(functionLookup.lookupClass(), name, methodType);
+      } catch (NoSuchMethodException | IllegalAccessException e) {
+        throw new AssertionError(e);
+      }
+    }
+    stats.classDefined();
+    return mh;
+  }
+
+  // the function of a class loaded from the cache or null if the file is corrupted, truncated or stale,
+  // in that case, the class is generated again
+  private static MethodHandle loadCachedFunction(byte[] instrs, FunClassData classData, String name,
+                                                 MethodType methodType) {
+    try {
+      var functionLookup = MethodHandles.lookup().defineHiddenClassWithClassData(instrs, classData, true);
+      return functionLookup.findStatic(functionLookup.lookupClass(), name, methodType);
+    } catch (LinkageError | IllegalArgumentException | NoSuchMethodException | IllegalAccessException e) {
+      return null;
+    }
+  }
+
+  // each function is a hidden class, not linked to a class loader, so it can be unloaded
+  // as soon as the function is not reachable
+  private static Lookup defineHiddenClass(byte[] instrs, FunClassData classData) {
+    try {
+      return MethodHandles.lookup().defineHiddenClassWithClassData(instrs, classData, true);
+    } catch (IllegalAccessException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  // the slots of this, the parameters and the local variables
+  static JSObject localEnv(List<String> parameters, Block body) {
     var env = JSObject.newEnv(null);
 
     env.register("this", 0);
     for (String parameter : parameters) {
       env.register(parameter, env.length());
     }
-    var parameterCount = env.length();
     visitVariable(body, env);
+    return env;
+  }
+
+  private static byte[] generate(String name, List<String> parameters, Block body, BitSet intSlots,
+                                 MethodType methodType, FunDictionary dictionary) {
+    var env = localEnv(parameters, body);
+    var parameterCount = 1 + parameters.size();
     var localVariableCount = env.length();
 
     var cv = new ClassWriter(ClassWriter.COMPUTE_MAXS | ClassWriter.COMPUTE_FRAMES);
-    cv.visit(V21, ACC_PUBLIC | ACC_SUPER, "script", null, "java/lang/Object", null);
+    // a hidden class must be in the package of the lookup that defines it
+    cv.visit(V21, ACC_PUBLIC | ACC_SUPER, "fr/umlv/smalljs/jvminterp/script", null, "java/lang/Object", null);
     cv.visitSource("script", null);
 
-    var methodType = genericMethodType(1 + parameters.size());
     var desc = methodType.toMethodDescriptorString();
     var mv = cv.visitMethod(ACC_PUBLIC | ACC_STATIC, name, desc, null, null);
     mv.visitCode();
@@ -59,8 +177,7 @@ public final class ByteCodeRewriter {
       mv.visitVarInsn(ASTORE, i);
     }
 
-    var dictionary = new FunDictionary();
-    visit(body, env, mv, dictionary);
+    visit(body, env, intSlots, mv, dictionary);
 
     mv.visitLdcInsn(new ConstantDynamic("undefined", "Ljava/lang/Object;", BSM_UNDEFINED));
     mv.visitInsn(ARETURN);
@@ -68,19 +185,13 @@ public final class ByteCodeRewriter {
     mv.visitEnd();
 
     var instrs = cv.toByteArray();
-    dumpBytecode(instrs);
-
-    var functionClassLoader = new FunClassLoader(dictionary, global);
-    var type = functionClassLoader.createClass("script", instrs);
-
-    MethodHandle mh;
-    try {
-      mh = MethodHandles.lookup().findStatic(type, name, methodType);
-    } catch (NoSuchMethodException | IllegalAccessException e) {
-      throw new AssertionError(e);
+    if (TRACE >= Trace.DEBUG) {
+      dumpBytecode(instrs);
     }
-
-    return JSObject.newFunction(name, mh);
+    if (VERIFY) {
+      verifyBytecode(instrs);
+    }
+    return instrs;
   }
 
   private static void dumpBytecode(byte[] array) {
@@ -88,6 +199,15 @@ public final class ByteCodeRewriter {
     CheckClassAdapter.verify(reader, true, new PrintWriter(System.err, false, UTF_8));
   }
 
+  private static void verifyBytecode(byte[] array) {
+    var reader = new ClassReader(array);
+    var errors = new StringWriter();
+    CheckClassAdapter.verify(reader, false, new PrintWriter(errors));
+    if (!errors.toString().isEmpty()) {
+      throw new AssertionError("invalid bytecode generated for " + reader.getClassName() + "\n" + errors);
+    }
+  }
+
   private static void visitVariable(Expr expression, JSObject env) {
     switch (expression) {
       case Block(List<Expr> exprs, _) -> {
@@ -112,6 +232,69 @@ public final class ByteCodeRewriter {
     ;
   }
 
+  // register the functions declared in the body, but not the ones declared in those functions
+  private static void visitFun(Expr expression, FunDictionary dictionary) {
+    switch (expression) {
+      case Block(List<Expr> exprs, _) -> {
+        for (var expr : exprs) {
+          visitFun(expr, dictionary);
+        }
+      }
+      case Fun fun -> dictionary.register(fun);
+      case Call(Expr qualifier, List<Expr> args, _) -> {
+        visitFun(qualifier, dictionary);
+        for (var arg : args) {
+          visitFun(arg, dictionary);
+        }
+      }
+      case MethodCall(Expr receiver, _, List<Expr> args, _) -> {
+        visitFun(receiver, dictionary);
+        for (var arg : args) {
+          visitFun(arg, dictionary);
+        }
+      }
+      case If(Expr condition, Block trueBlock, Block falseBlock, _) -> {
+        visitFun(condition, dictionary);
+        visitFun(trueBlock, dictionary);
+        visitFun(falseBlock, dictionary);
+      }
+      case VarAssignment(_, Expr expr, _, _) -> visitFun(expr, dictionary);
+      case Return(Expr expr, _) -> visitFun(expr, dictionary);
+      case ObjectLiteral(Map<String, Expr> initMap, _) -> {
+        for (var expr : initMap.values()) {
+          visitFun(expr, dictionary);
+        }
+      }
+      case FieldAccess(Expr receiver, _, _) -> visitFun(receiver, dictionary);
+      case FieldAssignment(Expr receiver, _, Expr expr, _) -> {
+        visitFun(receiver, dictionary);
+        visitFun(expr, dictionary);
+      }
+      case Literal _, Identifier _ -> {
+        // do nothing
+      }
+    }
+  }
+
+  private static void visitAssignment(Expr expression, Set<String> assigned) {
+    switch (expression) {
+      case Block(List<Expr> exprs, _) -> {
+        for (var expr : exprs) {
+          visitAssignment(expr, assigned);
+        }
+      }
+      case VarAssignment(String name, _, _, _) -> assigned.add(name);
+      case If(_, Block trueBlock, Block falseBlock, _) -> {
+        visitAssignment(trueBlock, assigned);
+        visitAssignment(falseBlock, assigned);
+      }
+      case Literal _, Call _, Identifier _, Fun _, Return _, ObjectLiteral _, FieldAccess _,
+           FieldAssignment _, MethodCall _ -> {
+        // do nothing
+      }
+    }
+  }
+
   private static Handle bsm(String name, Class<?> returnType, Class<?>... parameterTypes) {
     return new Handle(H_INVOKESTATIC,
             RT_NAME, name,
@@ -132,7 +315,25 @@ public final class ByteCodeRewriter {
   private static final Handle BSM_SET = bsm("bsm_set", CallSite.class, Lookup.class, String.class, MethodType.class, String.class);
   private static final Handle BSM_METHODCALL = bsm("bsm_methodcall", CallSite.class, Lookup.class, String.class, MethodType.class);
 
-  private static void visit(Expr expression, JSObject env, MethodVisitor mv, FunDictionary dictionary) {
+  // visit an argument of a call, an int local variable or an int literal is passed unboxed
+  // if the function is specialized, returns the descriptor of the argument
+  private static String visitArgument(Expr arg, JSObject env, BitSet intSlots, MethodVisitor mv, FunDictionary dictionary) {
+    if (!intSlots.isEmpty()) {
+      if (arg instanceof Identifier(String name, _)
+          && env.lookupOrDefault(name, null) instanceof Integer slot && intSlots.get(slot)) {
+        mv.visitVarInsn(ILOAD, slot);
+        return "I";
+      }
+      if (arg instanceof Literal(Integer integer, _)) {
+        mv.visitLdcInsn(integer);
+        return "I";
+      }
+    }
+    visit(arg, env, intSlots, mv, dictionary);
+    return "Ljava/lang/Object;";
+  }
+
+  private static void visit(Expr expression, JSObject env, BitSet intSlots, MethodVisitor mv, FunDictionary dictionary) {
     switch (expression) {
       case Block(List<Expr> exprs, int lineNumber) -> {
         // for each expression
@@ -142,7 +343,7 @@ public final class ByteCodeRewriter {
           mv.visitLabel(label);
           mv.visitLineNumber(lineNumber, label);
           // visit it
-          visit(expr, env, mv, dictionary);
+          visit(expr, env, intSlots, mv, dictionary);
           // if not a statement, generate a POP
           if (!(expr instanceof Expr.Statement)) {
             mv.visitInsn(POP);
@@ -169,31 +370,33 @@ public final class ByteCodeRewriter {
                 && env.lookupOrDefault(identifier.name(), null) == null) {
 
           mv.visitLdcInsn(undefined);
+          var desc = new StringBuilder("(Ljava/lang/Object;");
           for (var arg : args) {
             // for each argument, visit it
-            visit(arg, env, mv, dictionary);
+            desc.append(visitArgument(arg, env, intSlots, mv, dictionary));
           }
           // generate an invokedynamic
-          var desc = "(" + "Ljava/lang/Object;".repeat(args.size() + 1) + ")Ljava/lang/Object;";
-          mv.visitInvokeDynamicInsn("globalcall", desc, BSM_GLOBALCALL, identifier.name());
+          desc.append(")Ljava/lang/Object;");
+          mv.visitInvokeDynamicInsn("globalcall", desc.toString(), BSM_GLOBALCALL, identifier.name());
           return;
         }
 
         // visit the qualifier
-        visit(qualifier, env, mv, dictionary);
+        visit(qualifier, env, intSlots, mv, dictionary);
         // load "this"
         mv.visitLdcInsn(undefined);
+        var desc = new StringBuilder("(Ljava/lang/Object;Ljava/lang/Object;");
         for (var arg : args) {
           // for each argument, visit it
-          visit(arg, env, mv, dictionary);
+          desc.append(visitArgument(arg, env, intSlots, mv, dictionary));
         }
         // generate an invokedynamic
-        var desc = "(" + "Ljava/lang/Object;".repeat(args.size() + 2) + ")Ljava/lang/Object;";
-        mv.visitInvokeDynamicInsn("call", desc, BSM_FUNCALL);
+        desc.append(")Ljava/lang/Object;");
+        mv.visitInvokeDynamicInsn("call", desc.toString(), BSM_FUNCALL);
       }
       case VarAssignment(String name, Expr expr, boolean declaration, int lineNumber) -> {
         // visit the expression
-        visit(expr, env, mv, dictionary);
+        visit(expr, env, intSlots, mv, dictionary);
         // lookup that name in the environment
         var slot = env.lookupOrDefault(name, null);
         // if it does not exist throw a Failure
@@ -201,6 +404,8 @@ public final class ByteCodeRewriter {
           throw new Failure("unknown variable " + name + " at line " + lineNumber);
         }
         // otherwise STORE the top of the stack at the local variable slot
+        // (an assigned variable is never specialized to int)
+        assert !intSlots.get((int) slot);
         mv.visitVarInsn(ASTORE, (int) slot);
       }
       case Identifier(String name, int lineNumber) -> {
@@ -213,7 +418,13 @@ public final class ByteCodeRewriter {
         } else {
           // otherwise
           //  load the local variable at the slot
-          mv.visitVarInsn(ALOAD, (int) slot);
+          if (intSlots.get((int) slot)) {
+            // box an int local variable
+            mv.visitVarInsn(ILOAD, (int) slot);
+            mv.visitMethodInsn(INVOKESTATIC, "java/lang/Integer", "valueOf", "(I)Ljava/lang/Integer;", false);
+          } else {
+            mv.visitVarInsn(ALOAD, (int) slot);
+          }
         }
       }
       case Fun fun -> {
@@ -232,60 +443,65 @@ public final class ByteCodeRewriter {
       }
       case Return(Expr expr, int lineNumber) -> {
         // visit the return expression
-        visit(expr, env, mv, dictionary);
+        visit(expr, env, intSlots, mv, dictionary);
         // generate the bytecode
         mv.visitInsn(ARETURN);
       }
       case If(Expr condition, Block trueBlock, Block falseBlock, int lineNumber) -> {
         // visit the condition
-        visit(condition, env, mv, dictionary);
+        visit(condition, env, intSlots, mv, dictionary);
         // generate an invokedynamic to transform an Object to a boolean using BSM_TRUTH
         mv.visitInvokeDynamicInsn("truth", "(Ljava/lang/Object;)Z", BSM_TRUTH);
         var isFalseLabel = new Label();
         mv.visitJumpInsn(IFEQ, isFalseLabel);
         // visit the true block
-        visit(trueBlock, env, mv, dictionary);
+        visit(trueBlock, env, intSlots, mv, dictionary);
         var endLabel = new Label();
         mv.visitJumpInsn(GOTO, endLabel);
         // visit the false block
         mv.visitLabel(isFalseLabel);
-        visit(falseBlock, env, mv, dictionary);
+        visit(falseBlock, env, intSlots, mv, dictionary);
         mv.visitLabel(endLabel);
       }
       case ObjectLiteral(Map<String, Expr> initMap, int lineNumber) -> {
-        // call newObject with an INVOKESTATIC
+        // call newObject with an INVOKESTATIC, the object is pre-sized with the number of fields
         mv.visitInsn(ACONST_NULL);
-        var desc = "(L" + JSOBJECT + ";)L" + JSOBJECT + ";";
+        mv.visitLdcInsn(initMap.size());
+        var desc = "(L" + JSOBJECT + ";I)L" + JSOBJECT + ";";
         mv.visitMethodInsn(INVOKESTATIC, JSOBJECT, "newObject", desc, false);
         // for each initialization expression
         initMap.forEach((fieldName, expr) -> {
           mv.visitInsn(DUP);
-          // generate a string with the key
-          mv.visitLdcInsn(fieldName);
-          // call register on the JSObject
-          visit(expr, env, mv, dictionary);
-          mv.visitMethodInsn(INVOKEVIRTUAL, JSOBJECT, "register", "(Ljava/lang/String;Ljava/lang/Object;)V", false);
+          visit(expr, env, intSlots, mv, dictionary);
+          // generate an invokedynamic that does a set through BSM_SET, so the layout transition is cached
+          mv.visitInvokeDynamicInsn("set", "(Ljava/lang/Object;Ljava/lang/Object;)V", BSM_SET, fieldName);
         });
       }
       case FieldAccess(Expr receiver, String name, int lineNumber) -> {
         // visit the receiver
-        visit(receiver, env, mv, dictionary);
+        visit(receiver, env, intSlots, mv, dictionary);
         // generate an invokedynamic that goes a get through BSM_GET
         mv.visitInvokeDynamicInsn("get", "(Ljava/lang/Object;)Ljava/lang/Object;", BSM_GET, name);
       }
       case FieldAssignment(Expr receiver, String name, Expr expr, int lineNumber) -> {
         // visit the receiver
-        visit(receiver, env, mv, dictionary);
+        visit(receiver, env, intSlots, mv, dictionary);
         // visit the expression
-        visit(expr, env, mv, dictionary);
+        visit(expr, env, intSlots, mv, dictionary);
         mv.visitInvokeDynamicInsn("set", "(Ljava/lang/Object;Ljava/lang/Object;)V", BSM_SET, name);
       }
       case MethodCall(Expr receiver, String name, List<Expr> args, int lineNumber) -> {
-        throw new UnsupportedOperationException("TODO MethodCall");
         // visit the receiver
+        visit(receiver, env, intSlots, mv, dictionary);
+        var desc = new StringBuilder("(Ljava/lang/Object;");
         // for each argument
-        // visit the argument
-        // generate an invokedynamic that call BSM_METHODCALL
+        for (var arg : args) {
+          // visit the argument
+          desc.append(visitArgument(arg, env, intSlots, mv, dictionary));
+        }
+        // generate an invokedynamic that call BSM_METHODCALL with the method name as name
+        desc.append(")Ljava/lang/Object;");
+        mv.visitInvokeDynamicInsn(name, desc.toString(), BSM_METHODCALL);
       }
     }
   }
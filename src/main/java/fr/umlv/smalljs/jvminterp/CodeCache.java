@@ -0,0 +1,97 @@
+package fr.umlv.smalljs.jvminterp;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.util.Objects.requireNonNull;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.BitSet;
+import java.util.HexFormat;
+import java.util.List;
+
+import fr.umlv.smalljs.ast.Expr.Block;
+import fr.umlv.smalljs.ast.Script;
+import fr.umlv.smalljs.ast.ScriptCodec;
+
+/**
+ * A directory that stores the class generated by the {@link ByteCodeRewriter} for each function,
+ * so a later run loads the class bytes from the disk instead of generating them with ASM.
+ * A class is stored in a file named by the SHA-256 of the {@link #COMPILER_VERSION},
+ * the name and the parameters of the function, its int slots and its body encoded by the {@link ScriptCodec}
+ * (so the shape of the AST, the literals and the line numbers).
+ * The cache is enabled by the system property {@code smalljs.jvm.codecache},
+ * an IO error is not an error, the class is just generated again.
+ */
+final class CodeCache {
+  /**
+   * Version of the code generated by the {@link ByteCodeRewriter},
+   * must be incremented when the generated code changes.
+   */
+  static final int COMPILER_VERSION = 2;
+
+  private final Path directory;
+
+  CodeCache(Path directory) {
+    this.directory = requireNonNull(directory);
+  }
+
+  static CodeCache fromSystemProperty() {
+    var directory = System.getProperty("smalljs.jvm.codecache");
+    return directory == null ? null : new CodeCache(Path.of(directory));
+  }
+
+  static String key(String name, List<String> parameters, Block body, BitSet intSlots) {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new AssertionError(e);
+    }
+    digest.update((COMPILER_VERSION + "\0" + name + "\0" + String.join(",", parameters) + "\0" + intSlots + "\0")
+        .getBytes(UTF_8));
+    digest.update(ScriptCodec.encode(new Script(body)));
+    return HexFormat.of().formatHex(digest.digest());
+  }
+
+  private Path path(String key) {
+    return directory.resolve(key + ".class");
+  }
+
+  byte[] load(String key) {
+    try {
+      return Files.readAllBytes(path(key));
+    } catch (NoSuchFileException e) {
+      return null;
+    } catch (IOException e) {
+      return null;  // not readable, the class will be generated
+    }
+  }
+
+  void store(String key, byte[] instrs) {
+    Path tmp = null;
+    try {
+      Files.createDirectories(directory);
+      // write then rename, so a concurrent run never reads a partial file
+      tmp = Files.createTempFile(directory, key, ".tmp");
+      Files.write(tmp, instrs);
+      Files.move(tmp, path(key), ATOMIC_MOVE, REPLACE_EXISTING);
+      tmp = null;
+    } catch (IOException e) {
+      // not writable, the class will be generated next time
+    } finally {
+      if (tmp != null) {
+        try {
+          Files.deleteIfExists(tmp);
+        } catch (IOException e) {
+          // ignore
+        }
+      }
+    }
+  }
+}
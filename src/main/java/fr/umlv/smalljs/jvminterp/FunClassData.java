@@ -0,0 +1,12 @@
+package fr.umlv.smalljs.jvminterp;
+
+import fr.umlv.smalljs.rt.JSObject;
+
+/**
+ * Class data of the hidden class of a function, retrieved by the bootstrap methods of {@link RT}
+ * with {@link java.lang.invoke.MethodHandles#classData}.
+ * @param codeCache may be null
+ * @param compileThreshold number of calls before a nested function is compiled, or zero or a negative value
+ */
+record FunClassData(FunDictionary dictionary, JSObject global, JVMStats stats, CodeCache codeCache,
+                    int compileThreshold) {}
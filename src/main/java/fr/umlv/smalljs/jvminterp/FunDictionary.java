@@ -1,21 +1,27 @@
 package fr.umlv.smalljs.jvminterp;
 
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 
 import fr.umlv.smalljs.ast.Expr.Fun;
 
 final class FunDictionary {
   private final ArrayList<Fun> dictionary = new ArrayList<>();
-  
+  private final IdentityHashMap<Fun, Integer> ids = new IdentityHashMap<>();
+
+  // registering the same Fun twice returns the same id
   public int register(Fun fun) {
-    var id = dictionary.size();
-    dictionary.add(fun);
-    return id;
+    return ids.computeIfAbsent(fun, _ -> {
+      var id = dictionary.size();
+      dictionary.add(fun);
+      return id;
+    });
   }
-  
+
   public Fun lookupAndClear(int id) {
     var fun = dictionary.get(id);
     dictionary.set(id, null);     // Fun will be garbage collected
+    ids.remove(fun);
     return fun;
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,86 @@
+package fr.umlv.smalljs.jvminterp;
+
+import static java.lang.invoke.MethodHandles.catchException;
+import static java.lang.invoke.MethodHandles.dropArguments;
+import static java.lang.invoke.MethodHandles.guardWithTest;
+import static java.lang.invoke.MethodType.methodType;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Map;
+
+import fr.umlv.smalljs.rt.Builtins;
+import fr.umlv.smalljs.rt.JSObject;
+
+/**
+ * Intrinsics of the built-in arithmetic operators of {@link Builtins} for the {@link JVMInterpreter}.
+ * When a global call resolves to one of them, {@link RT#bsm_globalcall} links it
+ * to a method handle on int guarded by a test that both operands are Integers.
+ * Non int operands and overflows (or division by zero) use the generic function.
+ */
+final class Intrinsics {
+  private Intrinsics() {
+    throw new AssertionError();
+  }
+
+  private static final MethodHandle IS_INTS;
+  private static final Map<JSObject, MethodHandle> INTRINSICS;
+
+  static {
+    var lookup = MethodHandles.lookup();
+    try {
+      IS_INTS = lookup.findStatic(Intrinsics.class, "isInts", methodType(boolean.class, Object.class, Object.class));
+      var intOp = methodType(int.class, int.class, int.class);
+      INTRINSICS = Map.of(
+          Builtins.ADD, lookup.findStatic(Math.class, "addExact", intOp),
+          Builtins.SUB, lookup.findStatic(Math.class, "subtractExact", intOp),
+          Builtins.MUL, lookup.findStatic(Math.class, "multiplyExact", intOp),
+          Builtins.DIV, lookup.findStatic(Intrinsics.class, "div", intOp),
+          Builtins.REM, lookup.findStatic(Intrinsics.class, "rem", intOp),
+          Builtins.LT, lookup.findStatic(Intrinsics.class, "lt", methodType(boolean.class, int.class, int.class)));
+    } catch (NoSuchMethodException | IllegalAccessException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  private static boolean isInts(Object left, Object right) {
+    return left instanceof Integer && right instanceof Integer;
+  }
+
+  private static int div(int left, int right) {
+    if (left == Integer.MIN_VALUE && right == -1) {
+      throw new ArithmeticException("integer overflow");
+    }
+    return left / right;
+  }
+
+  private static int rem(int left, int right) {
+    return left % right;
+  }
+
+  private static boolean lt(int left, int right) {
+    return left < right;
+  }
+
+  /**
+   * Returns a method handle of type {@code type} (this, left, right) implementing
+   * the function, or null if the function has no intrinsic.
+   * If both operands are already typed int, there is no need for a guard.
+   */
+  static MethodHandle intrinsic(JSObject function, MethodType type) {
+    var op = INTRINSICS.get(function);
+    if (op == null || type.parameterCount() != 3) {
+      return null;
+    }
+    var generic = function.methodHandle().asType(type);
+    var operandTypes = type.dropParameterTypes(0, 1);
+    var fastPath = dropArguments(op.asType(operandTypes), 0, type.parameterType(0));
+    var exact = catchException(fastPath, ArithmeticException.class, dropArguments(generic, 0, ArithmeticException.class));
+    if (operandTypes.parameterType(0) == int.class && operandTypes.parameterType(1) == int.class) {
+      return exact;
+    }
+    var test = dropArguments(IS_INTS.asType(operandTypes.changeReturnType(boolean.class)), 0, type.parameterType(0));
+    return guardWithTest(test, exact, generic);
+  }
+}
@@ -4,40 +4,47 @@ import static fr.umlv.smalljs.rt.JSObject.UNDEFINED;
 import static java.util.stream.Collectors.joining;
 
 import java.io.PrintStream;
+import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.List;
 
 import fr.umlv.smalljs.ast.Script;
+import fr.umlv.smalljs.rt.Builtins;
 import fr.umlv.smalljs.rt.JSObject;
 
 public final class JVMInterpreter {
-  @SuppressWarnings("unchecked")
   private static JSObject createGlobalEnv(PrintStream outStream) {
-    var globalEnv = JSObject.newEnv(null);
-    globalEnv.register("globalThis", globalEnv);
+    var globalEnv = Builtins.newGlobalEnv();
     globalEnv.register("print", JSObject.newFunction("print", (_, args) -> {
       //System.err.println("print called with " + Arrays.toString(args));
       outStream.println(Arrays.stream(args).map(String::valueOf).collect(joining(" ")));
       return UNDEFINED;
     }));
-    globalEnv.register("+", JSObject.newFunction("+", (_, args) -> (Integer) args[0] + (Integer) args[1]));
-    globalEnv.register("-", JSObject.newFunction("-", (_, args) -> (Integer) args[0] - (Integer) args[1]));
-    globalEnv.register("/", JSObject.newFunction("/", (_, args) -> (Integer) args[0] / (Integer) args[1]));
-    globalEnv.register("*", JSObject.newFunction("*", (_, args) -> (Integer) args[0] * (Integer) args[1]));
-    globalEnv.register("%", JSObject.newFunction("%", (_, args) -> (Integer) args[0] % (Integer) args[1]));
-    globalEnv.register("==", JSObject.newFunction("==", (_, args) -> args[0].equals(args[1])));
-    globalEnv.register("!=", JSObject.newFunction("!=", (_, args) -> !args[0].equals(args[1])));
-    globalEnv.register("<", JSObject.newFunction("<",   (_, args) -> (((Comparable<Object>) args[0]).compareTo(args[1]) < 0)));
-    globalEnv.register("<=", JSObject.newFunction("<=", (_, args) -> (((Comparable<Object>) args[0]).compareTo(args[1]) <= 0)));
-    globalEnv.register(">", JSObject.newFunction(">",   (_, args) -> (((Comparable<Object>) args[0]).compareTo(args[1]) > 0)));
-    globalEnv.register(">=", JSObject.newFunction(">=", (_, args) -> (((Comparable<Object>) args[0]).compareTo(args[1]) >= 0)));
     return globalEnv;
   }
 
   public static void interpret(Script script, PrintStream outStream) {
+    interpret(script, outStream, new JVMStats());
+  }
+
+  public static void interpret(Script script, PrintStream outStream, JVMStats stats) {
+    interpret(script, outStream, stats, CodeCache.fromSystemProperty(), TieredFunction.THRESHOLD);
+  }
+
+  /**
+   * Interprets the script, the generated classes are stored in and loaded from the directory {@code codeCache}.
+   */
+  public static void interpret(Script script, PrintStream outStream, JVMStats stats, Path codeCache) {
+    interpret(script, outStream, stats, new CodeCache(codeCache), TieredFunction.THRESHOLD);
+  }
+
+  // codeCache may be null, a compileThreshold of zero or less disables the tiered mode
+  static void interpret(Script script, PrintStream outStream, JVMStats stats, CodeCache codeCache,
+                        int compileThreshold) {
     var globalEnv = createGlobalEnv(outStream);
     var body = script.body();
-    var function = ByteCodeRewriter.createFunction("main", List.of(), body, globalEnv);
+    var function = ByteCodeRewriter.createFunction("main", List.of(), body, globalEnv, stats, codeCache,
+        compileThreshold);
     function.invoke(UNDEFINED);
   }
 }
@@ -0,0 +1,61 @@
+package fr.umlv.smalljs.jvminterp;
+
+/**
+ * Events of the {@link JVMInterpreter} runtime:
+ * the classes defined for the functions, the ones loaded from the {@link CodeCache}, the misses of the inlining caches,
+ * the int specializations of the functions and the deoptimizations.
+ */
+public final class JVMStats {
+  private int classesDefined;
+  private int codeCacheHits;
+  private int cacheMisses;
+  private int specializations;
+  private int deoptimizations;
+
+  void classDefined() {
+    classesDefined++;
+  }
+
+  void codeCacheHit() {
+    codeCacheHits++;
+  }
+
+  void cacheMiss() {
+    cacheMisses++;
+  }
+
+  void specialization() {
+    specializations++;
+  }
+
+  void deoptimization() {
+    deoptimizations++;
+  }
+
+  public int classesDefined() {
+    return classesDefined;
+  }
+
+  public int codeCacheHits() {
+    return codeCacheHits;
+  }
+
+  public int cacheMisses() {
+    return cacheMisses;
+  }
+
+  public int specializations() {
+    return specializations;
+  }
+
+  public int deoptimizations() {
+    return deoptimizations;
+  }
+
+  @Override
+  public String toString() {
+    return "classes defined: " + classesDefined + ", code cache hits: " + codeCacheHits
+        + ", cache misses: " + cacheMisses
+        + ", specializations: " + specializations + ", deoptimizations: " + deoptimizations;
+  }
+}
@@ -8,6 +8,7 @@ import static java.lang.invoke.MethodHandles.insertArguments;
 import static java.lang.invoke.MethodHandles.invoker;
 import static java.lang.invoke.MethodType.methodType;
 
+import java.lang.constant.ConstantDescs;
 import java.lang.invoke.CallSite;
 import java.lang.invoke.ConstantCallSite;
 import java.lang.invoke.MethodHandle;
@@ -18,9 +19,13 @@ import java.lang.invoke.MutableCallSite;
 
 import fr.umlv.smalljs.rt.Failure;
 import fr.umlv.smalljs.rt.JSObject;
+import fr.umlv.smalljs.rt.PropertyCell;
+import fr.umlv.smalljs.rt.Trace;
 
 public final class RT {
-  private static final MethodHandle LOOKUP_OR_DEFAULT, LOOKUP_OR_FAIL, REGISTER, INVOKE, TRUTH, LOOKUP_MH;
+  private static final int TRACE = Trace.level("jvm");
+
+  private static final MethodHandle LOOKUP_OR_DEFAULT, LOOKUP_OR_FAIL, REGISTER, INVOKE, TRUTH, LOOKUP_MH, LAYOUT_CHECK;
 
   static {
     var lookup = MethodHandles.lookup();
@@ -29,11 +34,13 @@ public final class RT {
       LOOKUP_OR_FAIL = lookup.findStatic(RT.class, "lookupOrFail", methodType(Object.class, JSObject.class, String.class));
       REGISTER = lookup.findVirtual(JSObject.class, "register", methodType(void.class, String.class, Object.class));
 
-      INVOKE = lookup.findVirtual(JSObject.class, "invoke", methodType(Object.class, Object.class, Object[].class));
+      INVOKE = lookup.findStatic(RT.class, "invoke", methodType(Object.class, Object.class, Object.class, Object[].class));
 
       TRUTH = lookup.findStatic(RT.class, "truth", methodType(boolean.class, Object.class));
 
-      LOOKUP_MH = lookup.findStatic(RT.class, "lookupMethodHandle", methodType(MethodHandle.class, JSObject.class, String.class));
+      LOOKUP_MH = lookup.findStatic(RT.class, "lookupMethodHandle", methodType(MethodHandle.class, Object.class, String.class));
+
+      LAYOUT_CHECK = lookup.findStatic(RT.class, "layoutCheck", methodType(boolean.class, JSObject.class, Object.class));
     } catch (NoSuchMethodException | IllegalAccessException e) {
       throw new AssertionError(e);
     }
@@ -47,8 +54,8 @@ public final class RT {
     return constant;
   }
 
-  @SuppressWarnings("unused")  // used by a method handle
-  private static Object lookupOrFail(JSObject jsObject, String key) {
+  // also used by the TieredFunction
+  static Object lookupOrFail(JSObject jsObject, String key) {
     var value = jsObject.lookupOrDefault(key, null);
     if (value == null) {
       throw new Failure("no value for " + key);
@@ -56,9 +63,32 @@ public final class RT {
     return value;
   }
 
+  // also used by the TieredFunction
+  static JSObject function(Object value) {
+    if (!(value instanceof JSObject function)) {
+      throw new Failure("not a function " + value);
+    }
+    return function;
+  }
+
+  @SuppressWarnings("unused")  // used by a method handle
+  private static Object invoke(Object qualifier, Object receiver, Object... args) {
+    return function(qualifier).invoke(receiver, args);
+  }
+
+  // the class data of the hidden class of the function calling the bootstrap method
+  private static FunClassData classData(Lookup lookup) {
+    try {
+      return MethodHandles.classData(lookup, ConstantDescs.DEFAULT_NAME, FunClassData.class);
+    } catch (IllegalAccessException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  /*
   public static CallSite bsm_lookup(Lookup lookup, String name, MethodType type, String variableName) {
-    var classLoader = (FunClassLoader) lookup.lookupClass().getClassLoader();
-    var globalEnv = classLoader.global();
+    var classData = classData(lookup);
+    var globalEnv = classData.global();
     // get the LOOKUP_OR_FAIL method handle
     var lookupOrFail = LOOKUP_OR_FAIL;
     // use the global environment as first argument and the variableName as second argument
@@ -67,6 +97,54 @@ public final class RT {
     // create a constant callsite
     return new ConstantCallSite(target);
   }
+  */
+
+  public static CallSite bsm_lookup(Lookup lookup, String name, MethodType type, String variableName) {
+    var classData = classData(lookup);
+    return new GlobalLookupCache(type, classData.global(), variableName, classData.stats());
+  }
+
+  // a global variable that was not reassigned is a constant guarded by its cell,
+  // otherwise the value is read from the cell
+  private static final class GlobalLookupCache extends MutableCallSite {
+    private static final MethodHandle SLOW_PATH, CELL_VALUE;
+
+    static {
+      var lookup = MethodHandles.lookup();
+      try {
+        SLOW_PATH = lookup.findVirtual(GlobalLookupCache.class, "slowPath", methodType(Object.class));
+        CELL_VALUE = lookup.findVirtual(PropertyCell.class, "value", methodType(Object.class));
+      } catch (NoSuchMethodException | IllegalAccessException e) {
+        throw new AssertionError(e);
+      }
+    }
+
+    private final JSObject globalEnv;
+    private final String variableName;
+    private final JVMStats stats;
+
+    private GlobalLookupCache(MethodType type, JSObject globalEnv, String variableName, JVMStats stats) {
+      super(type);
+      this.globalEnv = globalEnv;
+      this.variableName = variableName;
+      this.stats = stats;
+      setTarget(SLOW_PATH.bindTo(this));
+    }
+
+    @SuppressWarnings("unused")  // called by a MH
+    private Object slowPath() {
+      stats.cacheMiss();
+      var value = lookupOrFail(globalEnv, variableName);
+      var cell = globalEnv.cell(variableName);
+      if (cell.stable()) {
+        var constant = MethodHandles.constant(Object.class, value);
+        setTarget(cell.switchPoint().guardWithTest(constant, SLOW_PATH.bindTo(this)));
+      } else {
+        setTarget(CELL_VALUE.bindTo(cell));
+      }
+      return value;
+    }
+  }
 
   public static CallSite bsm_funcall(Lookup lookup, String name, MethodType type) {
 //    // get INVOKE method handle
@@ -75,7 +153,8 @@ public final class RT {
 //    var target = invoke.asType(type);
 //    // create a constant callsite
 //    return new ConstantCallSite(target);
-    return new InliningCache(type, InliningCache.MAX_DEPTH, null);
+    var classData = classData(lookup);
+    return new InliningCache(type, InliningCache.MAX_DEPTH, null, classData.stats());
   }
 
   private static class InliningCache extends MutableCallSite {
@@ -94,9 +173,11 @@ public final class RT {
 
     private final int depth;
     private final InliningCache root;
+    private final JVMStats stats;
 
-    public InliningCache(MethodType type, int depth, InliningCache root) {
+    public InliningCache(MethodType type, int depth, InliningCache root, JVMStats stats) {
       this.depth = depth;
+      this.stats = stats;
       super(type);
       this.root = root == null ? this : root;
       setTarget(MethodHandles.foldArguments(MethodHandles.exactInvoker(type), SLOW_PATH.bindTo(this)));
@@ -107,10 +188,13 @@ public final class RT {
     }
 
     private MethodHandle slowPath(Object qualifier, Object receiver) {
-      var jsObject = (JSObject) qualifier;
+      var jsObject = function(qualifier);
       var mh = jsObject.methodHandle();
 
-      System.err.println("jsobject: " + jsObject.name());
+      stats.cacheMiss();
+      if (TRACE >= Trace.INFO) {
+        System.err.println("jsobject: " + jsObject.name());
+      }
 
       if (!mh.isVarargsCollector() && type().parameterCount() != mh.type().parameterCount() + 1) {
         throw new Failure("wrong number of arguments for " + (mh.type().parameterCount() - 1)
@@ -122,14 +206,17 @@ public final class RT {
       target = target.asType(type());
 
       if (depth == MAX_DEPTH) {
-        System.err.println("deoptimize " + depth);
+        stats.deoptimization();
+        if (TRACE >= Trace.INFO) {
+          System.err.println("deoptimize " + depth);
+        }
         root.setTarget(INVOKE.asType(type()));
         return target;
       }
 
       var test = MethodHandles.insertArguments(TEST, 1, jsObject);
 
-      var fallback = new InliningCache(type(), depth + 1, root).dynamicInvoker();
+      var fallback = new InliningCache(type(), depth + 1, root, stats).dynamicInvoker();
 
       var guard = MethodHandles.guardWithTest(test, target, fallback);
       setTarget(guard);
@@ -139,26 +226,27 @@ public final class RT {
   }
 
   public static CallSite bsm_globalcall(Lookup lookup, String name, MethodType type, String identifierName) {
-//    var classLoader = (FunClassLoader) lookup.lookupClass().getClassLoader();
-//    var globalEnv = classLoader.global();
+//    var classData = classData(lookup);
+//    var globalEnv = classData.global();
 //
 //    var function = globalEnv.lookupOrDefault(identifierName, null);
 //    var mh = ((JSObject) function).methodHandle();
 //
 //    return new ConstantCallSite(mh.asType(type));
-    var classLoader = (FunClassLoader) lookup.lookupClass().getClassLoader();
-    var globalEnv = classLoader.global();
+    var classData = classData(lookup);
+    var globalEnv = classData.global();
 
-    return new GlobalEnvInliningCache(type, globalEnv, identifierName);
+    return new GlobalEnvInliningCache(type, globalEnv, identifierName, classData.stats());
   }
 
   private static final class GlobalEnvInliningCache extends MutableCallSite {
-    private static final MethodHandle SLOW_PATH;
+    private static final MethodHandle SLOW_PATH, CELL_METHOD_HANDLE;
 
     static {
       var lookup = MethodHandles.lookup();
       try {
         SLOW_PATH = lookup.findVirtual(GlobalEnvInliningCache.class, "slowPath", methodType(MethodHandle.class));
+        CELL_METHOD_HANDLE = lookup.findStatic(GlobalEnvInliningCache.class, "cellMethodHandle", methodType(MethodHandle.class, PropertyCell.class, MethodType.class));
       } catch (NoSuchMethodException | IllegalAccessException e) {
         throw new AssertionError(e);
       }
@@ -166,50 +254,75 @@ public final class RT {
 
     private final JSObject globalEnv;
     private final String identifierName;
+    private final JVMStats stats;
     private final MethodHandle fallback;
 
-    private GlobalEnvInliningCache(MethodType type, JSObject globalEnv, String identifierName) {
+    private GlobalEnvInliningCache(MethodType type, JSObject globalEnv, String identifierName, JVMStats stats) {
       this.globalEnv = globalEnv;
       this.identifierName = identifierName;
+      this.stats = stats;
       super(type);
       this.fallback = MethodHandles.foldArguments(MethodHandles.exactInvoker(type), SLOW_PATH.bindTo(this));
       setTarget(fallback);
     }
 
+    private static void checkArity(MethodHandle mh, MethodType type) {
+      if (!mh.isVarargsCollector() && type.parameterCount() != mh.type().parameterCount()) {
+        throw new Failure("Wrong number of arguments for " + (mh.type().parameterCount() - 1) + " expected " + (type.parameterCount() - 1));
+      }
+    }
+
+    @SuppressWarnings("unused")  // called by a MH
+    private static MethodHandle cellMethodHandle(PropertyCell cell, MethodType type) {
+      var mh = function(cell.value()).methodHandle();
+      checkArity(mh, type);
+      return mh;
+    }
+
     @SuppressWarnings("unused")  // called by a MH
     private MethodHandle slowPath() {
-      var function = globalEnv.lookupOrDefault(identifierName, null);
-      if (function == null) {
+      stats.cacheMiss();
+      var value = globalEnv.lookupOrDefault(identifierName, null);
+      if (value == null) {
         throw new Failure("Function not found: " + identifierName);
       }
 
-      var jsObject = (JSObject) function;
+      var jsObject = function(value);
       var mh = jsObject.methodHandle();
-      if (!mh.isVarargsCollector() && type().parameterCount() != mh.type().parameterCount()) {
-        throw new Failure("Wrong number of arguments for " + (mh.type().parameterCount() - 1) + " expected " + (type().parameterCount() - 1));
+      checkArity(mh, type());
+
+      // the built-in operators on int are linked to an intrinsic
+      var intrinsic = Intrinsics.intrinsic(jsObject, type());
+      var target = intrinsic != null ? intrinsic : mh.asType(type());
+      // only a change of the value of identifierName invalidates the target
+      var cell = globalEnv.cell(identifierName);
+      if (!cell.stable()) {
+        // the function was redefined, stop relinking and call the value of the cell
+        stats.deoptimization();
+        var combiner = insertArguments(CELL_METHOD_HANDLE, 0, cell, type());
+        setTarget(MethodHandles.foldArguments(MethodHandles.invoker(type()), combiner));
+        return mh.asType(type());
       }
-
-      var target = mh.asType(type());
-      var switchPoint = globalEnv.switchPoint();
-      var guard = switchPoint.guardWithTest(target, fallback);
+      var guard = cell.switchPoint().guardWithTest(target, fallback);
       setTarget(guard);
       return mh.asType(type());
     }
   }
 
   public static Object bsm_fun(Lookup lookup, String name, Class<?> type, int funId) {
-    var classLoader = (FunClassLoader) lookup.lookupClass().getClassLoader();
-    var globalEnv = classLoader.global();
+    var classData = classData(lookup);
+    var globalEnv = classData.global();
     // get the dictionary and get the Fun object corresponding to the id
-    var dictionary = classLoader.dictionary();
+    var dictionary = classData.dictionary();
     var fun = dictionary.lookupAndClear(funId);
     // create the function using ByteCodeRewriter.createFunction(...)
-    return ByteCodeRewriter.createFunction(name, fun.parameters(), fun.body(), globalEnv);
+    return ByteCodeRewriter.createFunction(name, fun.parameters(), fun.body(), globalEnv, classData.stats(),
+        classData.codeCache(), classData.compileThreshold());
   }
 
   public static CallSite bsm_register(Lookup lookup, String name, MethodType type, String functionName) {
-    var classLoader = (FunClassLoader) lookup.lookupClass().getClassLoader();
-    var globalEnv = classLoader.global();
+    var classData = classData(lookup);
+    var globalEnv = classData.global();
     //get the REGISTER method handle
     var register = REGISTER;
     // use the global environment as first argument and the functionName as second argument
@@ -218,8 +331,8 @@ public final class RT {
     return new ConstantCallSite(target);
   }
 
-  @SuppressWarnings("unused")  // used by a method handle
-  private static boolean truth(Object o) {
+  // also used by the TieredFunction
+  static boolean truth(Object o) {
     return o != null && o != UNDEFINED && o != Boolean.FALSE;
   }
 
@@ -245,11 +358,17 @@ public final class RT {
 
   public static CallSite bsm_get(Lookup lookup, String name, MethodType type, String fieldName) {
     //return new ConstantCallSite(insertArguments(LOOKUP, 1, fieldName).asType(type));
-    return new InliningFieldCache(type, fieldName);
+    var classData = classData(lookup);
+    return new InliningFieldCache(type, fieldName, classData.stats());
+  }
+
+  @SuppressWarnings("unused")  // used by a method handle
+  private static boolean layoutCheck(JSObject jsObject, Object expectedLayout) {
+    return jsObject.layout() == expectedLayout;
   }
 
   private static final class InliningFieldCache extends MutableCallSite {
-    private static final MethodHandle SLOW_PATH, LAYOUT_CHECK, FAST_ACCESS;
+    private static final MethodHandle SLOW_PATH, FAST_ACCESS;
 
     static {
       var lookup = MethodHandles.lookup();
@@ -258,27 +377,24 @@ public final class RT {
                 methodType(Object.class, Object.class));
         FAST_ACCESS = lookup.findVirtual(JSObject.class, "fastAccess",
                 methodType(Object.class, int.class));
-        LAYOUT_CHECK = lookup.findStatic(InliningFieldCache.class, "layoutCheck",
-                methodType(boolean.class, JSObject.class, Object.class));
       } catch (NoSuchMethodException | IllegalAccessException e) {
         throw new AssertionError(e);
       }
     }
 
     private final String fieldName;
+    private final JVMStats stats;
 
-    public InliningFieldCache(MethodType type, String fieldName) {
+    public InliningFieldCache(MethodType type, String fieldName, JVMStats stats) {
       super(type);
       this.fieldName = fieldName;
+      this.stats = stats;
       setTarget(SLOW_PATH.bindTo(this));
     }
 
-    private static boolean layoutCheck(JSObject jsObject, Object expectedLayout) {
-      return jsObject.layout() == expectedLayout;
-    }
-
     @SuppressWarnings("unused")  // called by a MH
     private Object slowPath(Object receiver) {
+      stats.cacheMiss();
       var jsObject = (JSObject) receiver;
 
       // classical access to the value
@@ -305,7 +421,7 @@ public final class RT {
       var test = MethodHandles.insertArguments(LAYOUT_CHECK, 1, layout)
               .asType(methodType(boolean.class, Object.class));
       var guardWithTest = guardWithTest(test, target,
-              new InliningFieldCache(type(), fieldName).dynamicInvoker()
+              new InliningFieldCache(type(), fieldName, stats).dynamicInvoker()
       );
       setTarget(guardWithTest);
 
@@ -313,6 +429,7 @@ public final class RT {
     }
   }
 
+  /*
   public static CallSite bsm_set(Lookup lookup, String name, MethodType type, String fieldName) {
     // get the REGISTER method handle
     var mh = REGISTER;
@@ -323,19 +440,200 @@ public final class RT {
     // create a constant callsite
     return new ConstantCallSite(target);
   }
+  */
 
-  @SuppressWarnings("unused")  // used by a method handle
-  private static MethodHandle lookupMethodHandle(JSObject receiver, String fieldName) {
-    var function = (JSObject) receiver.lookupOrDefault(fieldName, null);
-    if (function == null) {
-      throw new Failure("no method " + fieldName);
+  public static CallSite bsm_set(Lookup lookup, String name, MethodType type, String fieldName) {
+    var classData = classData(lookup);
+    return new InliningFieldSetCache(type, fieldName, 0, classData.stats());
+  }
+
+  private static final class InliningFieldSetCache extends MutableCallSite {
+    private static final MethodHandle SLOW_PATH, FAST_STORE, FAST_ADD;
+    private static final int MAX_DEPTH = 4;
+
+    static {
+      var lookup = MethodHandles.lookup();
+      try {
+        SLOW_PATH = lookup.findVirtual(InliningFieldSetCache.class, "slowPath",
+                methodType(void.class, Object.class, Object.class));
+        FAST_STORE = lookup.findVirtual(JSObject.class, "fastStore",
+                methodType(void.class, int.class, Object.class));
+        FAST_ADD = lookup.findVirtual(JSObject.class, "fastAdd",
+                methodType(void.class, Object.class, Object.class));
+      } catch (NoSuchMethodException | IllegalAccessException e) {
+        throw new AssertionError(e);
+      }
+    }
+
+    private final String fieldName;
+    private final int depth;
+    private final JVMStats stats;
+
+    public InliningFieldSetCache(MethodType type, String fieldName, int depth, JVMStats stats) {
+      super(type);
+      this.fieldName = fieldName;
+      this.depth = depth;
+      this.stats = stats;
+      setTarget(SLOW_PATH.bindTo(this));
+    }
+
+    @SuppressWarnings("unused")  // called by a MH
+    private void slowPath(Object receiver, Object value) {
+      stats.cacheMiss();
+      var jsObject = (JSObject) receiver;
+
+      if (depth == MAX_DEPTH) {  // megamorphic
+        stats.deoptimization();
+        setTarget(insertArguments(REGISTER, 1, fieldName).asType(type()));
+        jsObject.register(fieldName, value);
+        return;
+      }
+
+      var layout = jsObject.layout();
+      var slot = jsObject.layoutSlot(fieldName);
+      MethodHandle target;
+      if (slot == -1) {
+        // cache the transition to the layout with the new field
+        var newLayout = jsObject.layoutForward(fieldName);
+        jsObject.fastAdd(newLayout, value);
+        target = insertArguments(FAST_ADD, 1, newLayout);
+      } else {
+        jsObject.fastStore(slot, value);
+        target = insertArguments(FAST_STORE, 1, slot);
+      }
+
+      var test = insertArguments(LAYOUT_CHECK, 1, layout)
+              .asType(methodType(boolean.class, Object.class));
+      var guard = guardWithTest(test, target.asType(type()),
+              new InliningFieldSetCache(type(), fieldName, depth + 1, stats).dynamicInvoker());
+      setTarget(guard);
     }
-    return function.methodHandle();
   }
 
+  static JSObject lookupMethod(Object receiver, String methodName) {
+    if (!(receiver instanceof JSObject jsObject)) {
+      throw new Failure("no method " + methodName + " on " + receiver);
+    }
+    if (!(jsObject.lookupOrDefault(methodName, null) instanceof JSObject method)) {
+      throw new Failure("no method " + methodName);
+    }
+    return method;
+  }
+
+  @SuppressWarnings("unused")  // used by a method handle
+  private static MethodHandle lookupMethodHandle(Object receiver, String methodName) {
+    return lookupMethod(receiver, methodName).methodHandle();
+  }
+
+  /*
   public static CallSite bsm_methodcall(Lookup lookup, String name, MethodType type) {
     var combiner = insertArguments(LOOKUP_MH, 1, name).asType(methodType(MethodHandle.class, Object.class));
     var target = foldArguments(invoker(type), combiner);
     return new ConstantCallSite(target);
   }
+  */
+
+  public static CallSite bsm_methodcall(Lookup lookup, String name, MethodType type) {
+    var classData = classData(lookup);
+    return new MethodCallInliningCache(type, name, 0, classData.stats());
+  }
+
+  private static final class MethodCallInliningCache extends MutableCallSite {
+    private static final MethodHandle SLOW_PATH, OWN_METHOD_CHECK, PROTO_METHOD_CHECK, METHOD_HANDLE;
+    private static final int MAX_DEPTH = 4;
+
+    static {
+      var lookup = MethodHandles.lookup();
+      try {
+        SLOW_PATH = lookup.findVirtual(MethodCallInliningCache.class, "slowPath",
+                methodType(MethodHandle.class, Object.class));
+        OWN_METHOD_CHECK = lookup.findStatic(MethodCallInliningCache.class, "ownMethodCheck",
+                methodType(boolean.class, Object.class, Object.class, int.class, Object.class));
+        PROTO_METHOD_CHECK = lookup.findStatic(MethodCallInliningCache.class, "protoMethodCheck",
+                methodType(boolean.class, Object.class, Object.class, JSObject.class));
+        METHOD_HANDLE = lookup.findStatic(MethodCallInliningCache.class, "methodHandle",
+                methodType(MethodHandle.class, Object.class, String.class, MethodType.class));
+      } catch (NoSuchMethodException | IllegalAccessException e) {
+        throw new AssertionError(e);
+      }
+    }
+
+    private final String methodName;
+    private final int depth;
+    private final JVMStats stats;
+
+    public MethodCallInliningCache(MethodType type, String methodName, int depth, JVMStats stats) {
+      super(type);
+      this.methodName = methodName;
+      this.depth = depth;
+      this.stats = stats;
+      setTarget(foldArguments(MethodHandles.exactInvoker(type), SLOW_PATH.bindTo(this)));
+    }
+
+    // the method is a field of the receiver
+    private static boolean ownMethodCheck(Object receiver, Object expectedLayout, int slot, Object expectedMethod) {
+      return receiver instanceof JSObject jsObject
+          && jsObject.layout() == expectedLayout
+          && jsObject.fastAccess(slot) == expectedMethod;
+    }
+
+    // the method is a field of a prototype, the prototypes are guarded by their switch points
+    private static boolean protoMethodCheck(Object receiver, Object expectedLayout, JSObject expectedProto) {
+      return receiver instanceof JSObject jsObject
+          && jsObject.layout() == expectedLayout
+          && jsObject.proto() == expectedProto;
+    }
+
+    private static void checkArity(MethodHandle mh, String methodName, MethodType type) {
+      if (!mh.isVarargsCollector() && mh.type().parameterCount() != type.parameterCount()) {
+        throw new Failure("wrong number of arguments for " + methodName + " expected "
+            + (mh.type().parameterCount() - 1) + " but was " + (type.parameterCount() - 1));
+      }
+    }
+
+    // the method handle of the method, used when the call site is megamorphic
+    @SuppressWarnings("unused")  // called by a MH
+    private static MethodHandle methodHandle(Object receiver, String methodName, MethodType type) {
+      var mh = lookupMethod(receiver, methodName).methodHandle();
+      checkArity(mh, methodName, type);
+      return mh;
+    }
+
+    @SuppressWarnings("unused")  // called by a MH
+    private MethodHandle slowPath(Object receiver) {
+      stats.cacheMiss();
+      var method = lookupMethod(receiver, methodName);
+      var mh = method.methodHandle();
+      checkArity(mh, methodName, type());
+      var target = mh.asType(type());
+
+      if (depth == MAX_DEPTH) {  // megamorphic
+        stats.deoptimization();
+        var combiner = insertArguments(METHOD_HANDLE, 1, methodName, type());
+        setTarget(foldArguments(invoker(type()), combiner));
+        return target;
+      }
+
+      var jsObject = (JSObject) receiver;
+      var layout = jsObject.layout();
+      var slot = jsObject.layoutSlot(methodName);
+      var fallback = new MethodCallInliningCache(type(), methodName, depth + 1, stats).dynamicInvoker();
+      MethodHandle test;
+      MethodHandle guardedTarget = target;
+      if (slot != -1) {
+        test = insertArguments(OWN_METHOD_CHECK, 1, layout, slot, method);
+      } else {
+        test = insertArguments(PROTO_METHOD_CHECK, 1, layout, jsObject.proto());
+        // any change of the prototypes up to the one that defines the method invalidates the target
+        for (var proto = jsObject.proto(); proto != null; proto = proto.proto()) {
+          guardedTarget = proto.switchPoint().guardWithTest(guardedTarget, fallback);
+          if (proto.layoutSlot(methodName) != -1) {
+            break;
+          }
+        }
+      }
+      setTarget(guardWithTest(test, guardedTarget, fallback));
+      return target;
+    }
+  }
 }
@@ -0,0 +1,265 @@
+package fr.umlv.smalljs.jvminterp;
+
+import static fr.umlv.smalljs.rt.JSObject.UNDEFINED;
+import static java.lang.invoke.MethodHandles.foldArguments;
+import static java.lang.invoke.MethodType.genericMethodType;
+import static java.lang.invoke.MethodType.methodType;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MutableCallSite;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import fr.umlv.smalljs.ast.Expr;
+import fr.umlv.smalljs.ast.Expr.Block;
+import fr.umlv.smalljs.ast.Expr.Call;
+import fr.umlv.smalljs.ast.Expr.FieldAccess;
+import fr.umlv.smalljs.ast.Expr.FieldAssignment;
+import fr.umlv.smalljs.ast.Expr.Fun;
+import fr.umlv.smalljs.ast.Expr.Identifier;
+import fr.umlv.smalljs.ast.Expr.If;
+import fr.umlv.smalljs.ast.Expr.Literal;
+import fr.umlv.smalljs.ast.Expr.MethodCall;
+import fr.umlv.smalljs.ast.Expr.ObjectLiteral;
+import fr.umlv.smalljs.ast.Expr.Return;
+import fr.umlv.smalljs.ast.Expr.VarAssignment;
+import fr.umlv.smalljs.rt.Failure;
+import fr.umlv.smalljs.rt.JSObject;
+import fr.umlv.smalljs.rt.Trace;
+
+/**
+ * Entry point of a function in the tiered mode: the function is first executed by walking its AST,
+ * after {@code compileThreshold} calls, it is compiled by the {@link ByteCodeRewriter}
+ * and the target of the call site is replaced by the compiled code.
+ * So a function that runs only a few times, like the body of the script, is never compiled.
+ *
+ * The AST is walked with the semantics of the generated code and not the one of the
+ * {@link fr.umlv.smalljs.astinterp.ASTInterpreter}: a variable that is not a local variable is a global variable,
+ * a nested function is created once per function and a function declaration is registered
+ * in the global environment.
+ *
+ * The tiered mode is enabled by the system property {@code smalljs.jvm.tiered} that is the number of calls
+ * before the compilation, zero or a negative value (the default) compiles the functions when they are created.
+ */
+final class TieredFunction extends MutableCallSite {
+  static final int THRESHOLD = Integer.getInteger("smalljs.jvm.tiered", -1);
+
+  private static final int TRACE = Trace.level("jvm");
+
+  private static final MethodHandle INTERPRET, COUNT;
+
+  static {
+    var lookup = MethodHandles.lookup();
+    try {
+      INTERPRET = lookup.findVirtual(TieredFunction.class, "interpret", methodType(Object.class, Object[].class));
+      COUNT = lookup.findVirtual(TieredFunction.class, "count", methodType(void.class));
+    } catch (NoSuchMethodException | IllegalAccessException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  // the completion signal of a return, the returned value is stored in the last slot of the frame
+  private static final Object RETURN = new Object() {
+    @Override
+    public String toString() {
+      return "return";
+    }
+  };
+
+  private final String name;
+  private final List<String> parameters;
+  private final Block body;
+  private final JSObject global;
+  private final JVMStats stats;
+  private final CodeCache codeCache;
+  private final int compileThreshold;
+  private final JSObject env;
+  private final IdentityHashMap<Fun, JSObject> functions = new IdentityHashMap<>();
+  private int counter;
+
+  TieredFunction(String name, List<String> parameters, Block body, JSObject global, JVMStats stats,
+                 CodeCache codeCache, int compileThreshold) {
+    super(genericMethodType(1 + parameters.size()));
+    this.name = name;
+    this.parameters = parameters;
+    this.body = body;
+    this.global = global;
+    this.stats = stats;
+    this.codeCache = codeCache;
+    this.compileThreshold = compileThreshold;
+    this.env = ByteCodeRewriter.localEnv(parameters, body);
+    // same error as the compilation
+    checkAssignment(body, env);
+
+    var interpreter = INTERPRET.bindTo(this).asCollector(Object[].class, 1 + parameters.size());
+    setTarget(foldArguments(interpreter, COUNT.bindTo(this)));
+  }
+
+  private static void checkAssignment(Expr expression, JSObject env) {
+    switch (expression) {
+      case Block(List<Expr> exprs, _) -> {
+        for (var expr : exprs) {
+          checkAssignment(expr, env);
+        }
+      }
+      case VarAssignment(String name, Expr expr, _, int lineNumber) -> {
+        checkAssignment(expr, env);
+        if (env.lookupOrDefault(name, null) == null) {
+          throw new Failure("unknown variable " + name + " at line " + lineNumber);
+        }
+      }
+      case Call(Expr qualifier, List<Expr> args, _) -> {
+        checkAssignment(qualifier, env);
+        for (var arg : args) {
+          checkAssignment(arg, env);
+        }
+      }
+      case MethodCall(Expr receiver, _, List<Expr> args, _) -> {
+        checkAssignment(receiver, env);
+        for (var arg : args) {
+          checkAssignment(arg, env);
+        }
+      }
+      case If(Expr condition, Block trueBlock, Block falseBlock, _) -> {
+        checkAssignment(condition, env);
+        checkAssignment(trueBlock, env);
+        checkAssignment(falseBlock, env);
+      }
+      case Return(Expr expr, _) -> checkAssignment(expr, env);
+      case ObjectLiteral(Map<String, Expr> initMap, _) -> {
+        for (var expr : initMap.values()) {
+          checkAssignment(expr, env);
+        }
+      }
+      case FieldAccess(Expr receiver, _, _) -> checkAssignment(receiver, env);
+      case FieldAssignment(Expr receiver, _, Expr expr, _) -> {
+        checkAssignment(receiver, env);
+        checkAssignment(expr, env);
+      }
+      case Literal _, Identifier _, Fun _ -> {
+        // do nothing, a nested function is checked when it is created
+      }
+    }
+  }
+
+  @SuppressWarnings("unused")  // called by a MH
+  private void count() {
+    if (++counter == compileThreshold) {
+      if (TRACE >= Trace.INFO) {
+        System.err.println("compile " + name);
+      }
+      var mh = ByteCodeRewriter.compile(name, parameters, body, global, stats, codeCache, compileThreshold,
+          new BitSet());
+      var candidates = ByteCodeRewriter.specializationCandidates(parameters, body);
+      if (candidates.isEmpty()) {
+        setTarget(mh);
+        return;
+      }
+      // the profile is the target of this call site, so there is no other indirection
+      new TypeProfile(name, parameters, body, global, stats, codeCache, compileThreshold, this, mh, candidates);
+    }
+  }
+
+  @SuppressWarnings("unused")  // called by a MH
+  private Object interpret(Object[] arguments) {
+    // this, the parameters, the local variables and the returned value
+    var localVariableCount = env.length();
+    var frame = Arrays.copyOf(arguments, localVariableCount + 1);
+    Arrays.fill(frame, arguments.length, frame.length, UNDEFINED);
+    visit(body, frame);
+    return frame[localVariableCount];
+  }
+
+  private Object[] visitAll(List<Expr> exprs, Object[] frame) {
+    var values = new Object[exprs.size()];
+    for (var i = 0; i < values.length; i++) {
+      values[i] = visit(exprs.get(i), frame);
+    }
+    return values;
+  }
+
+  private Object visit(Expr expression, Object[] frame) {
+    return switch (expression) {
+      case Block(List<Expr> exprs, _) -> {
+        for (var expr : exprs) {
+          // stop at the first return
+          if (visit(expr, frame) == RETURN) {
+            yield RETURN;
+          }
+        }
+        yield UNDEFINED;
+      }
+      case Literal(Object value, _) -> value;
+      case Call(Expr qualifier, List<Expr> args, _) -> {
+        if (qualifier instanceof Identifier(String functionName, _)
+            && env.lookupOrDefault(functionName, null) == null) {
+          var arguments = visitAll(args, frame);
+          var function = global.lookupOrDefault(functionName, null);
+          if (function == null) {
+            throw new Failure("Function not found: " + functionName);
+          }
+          yield RT.function(function).invoke(UNDEFINED, arguments);
+        }
+        var function = visit(qualifier, frame);
+        var arguments = visitAll(args, frame);
+        yield RT.function(function).invoke(UNDEFINED, arguments);
+      }
+      case Identifier(String variableName, _) -> {
+        var slot = env.lookupOrDefault(variableName, null);
+        yield slot == null ? RT.lookupOrFail(global, variableName) : frame[(int) slot];
+      }
+      case VarAssignment(String variableName, Expr expr, _, _) -> {
+        frame[(int) env.lookupOrDefault(variableName, null)] = visit(expr, frame);
+        yield UNDEFINED;
+      }
+      case Fun fun -> {
+        // like the constant of the generated code, the function is created once
+        var function = functions.computeIfAbsent(fun, f -> ByteCodeRewriter.createFunction(
+            f.name(), f.parameters(), f.body(), global, stats, codeCache, compileThreshold));
+        if (fun.toplevel()) {
+          global.register(fun.name(), function);
+        }
+        yield function;
+      }
+      case Return(Expr expr, _) -> {
+        frame[frame.length - 1] = visit(expr, frame);
+        yield RETURN;
+      }
+      case If(Expr condition, Block trueBlock, Block falseBlock, _) -> {
+        // propagate the completion signal of a return
+        if (RT.truth(visit(condition, frame))) {
+          yield visit(trueBlock, frame);
+        }
+        yield visit(falseBlock, frame);
+      }
+      case ObjectLiteral(Map<String, Expr> initMap, _) -> {
+        var object = JSObject.newObject(null, initMap.size());
+        for (var entry : initMap.entrySet()) {
+          object.register(entry.getKey(), visit(entry.getValue(), frame));
+        }
+        yield object;
+      }
+      case FieldAccess(Expr receiver, String fieldName, _) -> {
+        // like the generated code, the prototypes are not used
+        var object = (JSObject) visit(receiver, frame);
+        var slot = object.layoutSlot(fieldName);
+        yield slot == -1 ? UNDEFINED : object.fastAccess(slot);
+      }
+      case FieldAssignment(Expr receiver, String fieldName, Expr expr, _) -> {
+        var object = visit(receiver, frame);
+        var value = visit(expr, frame);
+        ((JSObject) object).register(fieldName, value);
+        yield UNDEFINED;
+      }
+      case MethodCall(Expr receiver, String methodName, List<Expr> args, _) -> {
+        var object = visit(receiver, frame);
+        var arguments = visitAll(args, frame);
+        yield RT.lookupMethod(object, methodName).invoke(object, arguments);
+      }
+    };
+  }
+}
@@ -0,0 +1,127 @@
+package fr.umlv.smalljs.jvminterp;
+
+import static java.lang.invoke.MethodHandles.dropArguments;
+import static java.lang.invoke.MethodHandles.foldArguments;
+import static java.lang.invoke.MethodHandles.guardWithTest;
+import static java.lang.invoke.MethodHandles.insertArguments;
+import static java.lang.invoke.MethodType.methodType;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MutableCallSite;
+import java.util.BitSet;
+import java.util.List;
+
+import fr.umlv.smalljs.ast.Expr.Block;
+import fr.umlv.smalljs.rt.JSObject;
+import fr.umlv.smalljs.rt.Trace;
+
+/**
+ * Target of the call site of a function compiled by the {@link ByteCodeRewriter} that records the types
+ * of the parameters that are never assigned in the body.
+ * After {@link #THRESHOLD} calls, if some of those parameters were always Integers,
+ * the function is recompiled with int slots for them and the specialized version is guarded
+ * by a test on the arguments. A non int argument deoptimizes the function back to the generic version.
+ * The profile sets the target of the call site when it is created.
+ * The threshold is configured by the system property {@code smalljs.jvm.specialize},
+ * a negative value disables the specialization.
+ */
+final class TypeProfile {
+  static final int THRESHOLD = Integer.getInteger("smalljs.jvm.specialize", 1_000);
+
+  private static final int TRACE = Trace.level("jvm");
+
+  private static final MethodHandle RECORD, COUNT, DEOPTIMIZE, IS_INTEGER;
+
+  static {
+    var lookup = MethodHandles.lookup();
+    try {
+      RECORD = lookup.findVirtual(TypeProfile.class, "record", methodType(void.class, int.class, Object.class));
+      COUNT = lookup.findVirtual(TypeProfile.class, "count", methodType(void.class));
+      DEOPTIMIZE = lookup.findVirtual(TypeProfile.class, "deoptimize", methodType(void.class));
+      IS_INTEGER = lookup.findStatic(TypeProfile.class, "isInteger", methodType(boolean.class, Object.class));
+    } catch (NoSuchMethodException | IllegalAccessException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  private final MutableCallSite callSite;
+  private final String name;
+  private final List<String> parameters;
+  private final Block body;
+  private final JSObject global;
+  private final JVMStats stats;
+  private final CodeCache codeCache;
+  private final int compileThreshold;
+  private final MethodHandle generic;
+  private final BitSet intSlots;
+  private int counter;
+
+  TypeProfile(String name, List<String> parameters, Block body, JSObject global, JVMStats stats,
+              CodeCache codeCache, int compileThreshold, MutableCallSite callSite, MethodHandle generic,
+              BitSet candidates) {
+    this.callSite = callSite;
+    this.name = name;
+    this.parameters = parameters;
+    this.body = body;
+    this.global = global;
+    this.stats = stats;
+    this.codeCache = codeCache;
+    this.compileThreshold = compileThreshold;
+    this.generic = generic;
+    this.intSlots = (BitSet) candidates.clone();
+
+    var target = foldArguments(generic, COUNT.bindTo(this));
+    for (var slot = candidates.nextSetBit(0); slot >= 0; slot = candidates.nextSetBit(slot + 1)) {
+      target = foldArguments(target, slot, insertArguments(RECORD, 0, this, slot));
+    }
+    callSite.setTarget(target);
+  }
+
+  private static boolean isInteger(Object value) {
+    return value instanceof Integer;
+  }
+
+  @SuppressWarnings("unused")  // called by a MH
+  private void record(int slot, Object value) {
+    if (!(value instanceof Integer)) {
+      intSlots.clear(slot);
+    }
+  }
+
+  @SuppressWarnings("unused")  // called by a MH
+  private void count() {
+    if (++counter == THRESHOLD) {
+      specialize();
+    }
+  }
+
+  private void specialize() {
+    if (intSlots.isEmpty()) {
+      callSite.setTarget(generic);
+      return;
+    }
+    if (TRACE >= Trace.INFO) {
+      System.err.println("specialize " + name + " int slots " + intSlots);
+    }
+    stats.specialization();
+    var specialized = ByteCodeRewriter.compile(name, parameters, body, global, stats, codeCache, compileThreshold,
+        intSlots);
+    var target = specialized.asType(callSite.type());
+    var deoptimize = foldArguments(generic, DEOPTIMIZE.bindTo(this));
+    for (var slot = intSlots.nextSetBit(0); slot >= 0; slot = intSlots.nextSetBit(slot + 1)) {
+      var test = dropArguments(IS_INTEGER, 0, callSite.type().parameterList().subList(0, slot));
+      target = guardWithTest(test, target, deoptimize);
+    }
+    callSite.setTarget(target);
+  }
+
+  @SuppressWarnings("unused")  // called by a MH
+  private void deoptimize() {
+    stats.deoptimization();
+    if (TRACE >= Trace.INFO) {
+      System.err.println("deoptimize " + name);
+    }
+    callSite.setTarget(generic);
+  }
+}
@@ -3,8 +3,10 @@ package fr.umlv.smalljs.main;
 import static fr.umlv.smalljs.ast.ASTBuilder.createScript;
 
 import fr.umlv.smalljs.ast.Script;
+import fr.umlv.smalljs.ast.ScriptCodec;
 import fr.umlv.smalljs.astinterp.ASTInterpreter;
 import fr.umlv.smalljs.jvminterp.JVMInterpreter;
+import fr.umlv.smalljs.rt.Trace;
 import fr.umlv.smalljs.stackinterp.StackInterpreter;
 import java.io.IOException;
 import java.io.PrintStream;
@@ -26,20 +28,60 @@ public class Main {
   private static void printHelp() {
     System.err.println("""
             Help:
-              fr.umlv.smalljs.main.Main interpreter input-file.js
+              fr.umlv.smalljs.main.Main [--trace[=level]] interpreter input-file.js
                 available interpreters: "ast", "stack" or "jvm"
+                available trace levels: "off", "info" (default) or "debug"
+                the input file can also be a pre-parsed script (.sjsb)
+              fr.umlv.smalljs.main.Main --compile input-file.js
+                writes the pre-parsed script input-file.sjsb
             """);
     System.exit(1);
   }
 
+  // a pre-parsed script (.sjsb) is decoded, otherwise the file is parsed
+  private static Script readScript(Path path) throws IOException {
+    if (path.toString().endsWith(".sjsb")) {
+      return ScriptCodec.decode(Files.readAllBytes(path));
+    }
+    return createScript(Files.readString(path));
+  }
+
+  private static void compile(Path path) throws IOException {
+    var script = createScript(Files.readString(path));
+    var fileName = path.getFileName().toString();
+    var baseName = fileName.endsWith(".js") ? fileName.substring(0, fileName.length() - ".js".length()) : fileName;
+    Files.write(path.resolveSibling(baseName + ".sjsb"), ScriptCodec.encode(script));
+  }
+
   public static void main(String[] args) throws IOException {
-    if (args.length != 2) {
+    if (args.length == 2 && args[0].equals("--compile")) {
+      compile(Path.of(args[1]));
+      return;
+    }
+    var index = 0;
+    String traceLevel = null;
+    if (args.length != 0 && (args[0].equals("--trace") || args[0].startsWith("--trace="))) {
+      traceLevel = args[0].equals("--trace") ? "info" : args[0].substring("--trace=".length());
+      index = 1;
+    }
+    if (args.length - index != 2) {
+      printHelp();
+      return;
+    }
+    var interpreterName = args[index];
+    BiConsumer<Script, PrintStream> interpreter;
+    try {
+      if (traceLevel != null) {
+        // the trace level is read when the interpreter is initialized
+        Trace.enable(interpreterName, traceLevel);
+      }
+      interpreter = interpreter(interpreterName);
+    } catch(IllegalArgumentException e) {
+      System.err.println(e.getMessage());
       printHelp();
       return;
     }
-    var interpreter = interpreter(args[0]);
-    var text = Files.readString(Path.of(args[1]));
-    var script = createScript(text);
+    var script = readScript(Path.of(args[index + 1]));
     try {
       interpreter.accept(script, System.out);
     } catch(RuntimeException e) {
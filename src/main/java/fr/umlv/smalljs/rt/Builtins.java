@@ -0,0 +1,57 @@
+package fr.umlv.smalljs.rt;
+
+/**
+ * The built-in operators shared by all the engines.
+ * The functions are created once, when this class is initialized, and stored in a table
+ * that is never modified. {@link #newGlobalEnv()} copies the table, so a script that redefines
+ * a built-in only changes its own global environment.
+ * The comparison operators return a {@link Boolean}.
+ */
+public final class Builtins {
+  private Builtins() {
+    throw new AssertionError();
+  }
+
+  public static final JSObject ADD = JSObject.newBinaryFunction("+", (left, right) -> (Integer) left + (Integer) right);
+  public static final JSObject SUB = JSObject.newBinaryFunction("-", (left, right) -> (Integer) left - (Integer) right);
+  public static final JSObject DIV = JSObject.newBinaryFunction("/", (left, right) -> (Integer) left / (Integer) right);
+  public static final JSObject MUL = JSObject.newBinaryFunction("*", (left, right) -> (Integer) left * (Integer) right);
+  public static final JSObject REM = JSObject.newBinaryFunction("%", (left, right) -> (Integer) left % (Integer) right);
+  public static final JSObject EQ = JSObject.newBinaryFunction("==", (left, right) -> left.equals(right));
+  public static final JSObject NE = JSObject.newBinaryFunction("!=", (left, right) -> !left.equals(right));
+  public static final JSObject LT = JSObject.newBinaryFunction("<", (left, right) -> compare(left, right) < 0);
+  public static final JSObject LE = JSObject.newBinaryFunction("<=", (left, right) -> compare(left, right) <= 0);
+  public static final JSObject GT = JSObject.newBinaryFunction(">", (left, right) -> compare(left, right) > 0);
+  public static final JSObject GE = JSObject.newBinaryFunction(">=", (left, right) -> compare(left, right) >= 0);
+
+  // the global environment of a run is a copy of this table
+  private static final JSObject TABLE = JSObject.newEnv(null, 11);
+  static {
+    TABLE.register("+", ADD);
+    TABLE.register("-", SUB);
+    TABLE.register("/", DIV);
+    TABLE.register("*", MUL);
+    TABLE.register("%", REM);
+    TABLE.register("==", EQ);
+    TABLE.register("!=", NE);
+    TABLE.register("<", LT);
+    TABLE.register("<=", LE);
+    TABLE.register(">", GT);
+    TABLE.register(">=", GE);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static int compare(Object left, Object right) {
+    return ((Comparable<Object>) left).compareTo(right);
+  }
+
+  /**
+   * Returns a new global environment containing "globalThis" and the built-in operators.
+   * The engine registers the other built-ins, like "print", that depend on the run.
+   */
+  public static JSObject newGlobalEnv() {
+    var globalEnv = TABLE.copy(TABLE.length() + 2);
+    globalEnv.register("globalThis", globalEnv);
+    return globalEnv;
+  }
+}
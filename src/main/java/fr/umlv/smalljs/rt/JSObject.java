@@ -8,53 +8,145 @@ import java.lang.invoke.MethodType;
 import java.lang.invoke.SwitchPoint;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.IdentityHashMap;
-import java.util.LinkedHashMap;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+import java.util.function.BinaryOperator;
 import java.util.function.UnaryOperator;
 
 public final class JSObject {
+  // a node of the transition tree, the slot of the key is size - 1,
+  // the slots of the other keys are found by walking the parents.
+  // For large layouts looked up often, an open-addressed table is built lazily.
+  // The tree is shared by all the objects of all the threads, so a transition is created under a lock
+  // and the table is published as one immutable object.
   private static final class Layout {
-    private final LinkedHashMap<String, Integer> slotMap;
-    private final HashMap<String, Layout> forwardMap = new HashMap<>();
+    private static final int LINEAR_SIZE = 8;
+    private static final int TABLE_LOOKUPS = 16;
 
-    private Layout(LinkedHashMap<String, Integer> slotMap) {
-      this.slotMap = slotMap;
+    private record Table(String[] keys, int[] slots) {
+      private int slot(String key) {
+        var mask = keys.length - 1;
+        for (var index = key.hashCode() & mask; ; index = (index + 1) & mask) {
+          var tableKey = keys[index];
+          if (tableKey == null) {
+            return -1;
+          }
+          if (tableKey == key || tableKey.equals(key)) {
+            return slots[index];
+          }
+        }
+      }
+    }
+
+    private final Layout parent;
+    private final String key;
+    private final int size;
+    private volatile Layout forward;                                // first transition
+    private volatile ConcurrentHashMap<String, Layout> forwardMap;  // other transitions, lazily allocated
+    private volatile Table table;                                   // lazily allocated
+    private int lookups;  // racy, only decides when the table is built
+
+    private Layout(Layout parent, String key, int size) {
+      this.parent = parent;
+      this.key = key;
+      this.size = size;
     }
 
     private int slot(String key) {
-      return slotMap.getOrDefault(key, -1);
+      var table = this.table;
+      if (table != null) {
+        return table.slot(key);
+      }
+      if (size > LINEAR_SIZE && ++lookups >= TABLE_LOOKUPS) {
+        table = buildTable();
+        this.table = table;
+        return table.slot(key);
+      }
+      for (var layout = this; layout.key != null; layout = layout.parent) {
+        if (layout.key == key || layout.key.equals(key)) {
+          return layout.size - 1;
+        }
+      }
+      return -1;
+    }
+
+    private Table buildTable() {
+      var capacity = Integer.highestOneBit(size) << 2;
+      var tableKeys = new String[capacity];
+      var tableSlots = new int[capacity];
+      for (var layout = this; layout.key != null; layout = layout.parent) {
+        var index = layout.key.hashCode() & (capacity - 1);
+        while (tableKeys[index] != null) {
+          index = (index + 1) & (capacity - 1);
+        }
+        tableKeys[index] = layout.key;
+        tableSlots[index] = layout.size - 1;
+      }
+      return new Table(tableKeys, tableSlots);
     }
 
     private Layout forward(String key) {
-      return forwardMap.computeIfAbsent(key, k -> {
-        var newSlotMap = new LinkedHashMap<>(slotMap);
-        newSlotMap.put(k, newSlotMap.size());
-        return new Layout(newSlotMap);
-      });
+      var forward = this.forward;
+      if (forward == null) {
+        synchronized (this) {
+          forward = this.forward;
+          if (forward == null) {
+            return this.forward = new Layout(this, key.intern(), size + 1);
+          }
+        }
+      }
+      if (forward.key == key || forward.key.equals(key)) {
+        return forward;
+      }
+      var forwardMap = this.forwardMap;
+      if (forwardMap == null) {
+        synchronized (this) {
+          forwardMap = this.forwardMap;
+          if (forwardMap == null) {
+            forwardMap = this.forwardMap = new ConcurrentHashMap<>();
+          }
+        }
+      }
+      return forwardMap.computeIfAbsent(key, k -> new Layout(this, k.intern(), size + 1));
+    }
+
+    // the keys in slot order
+    private String[] keys() {
+      var keys = new String[size];
+      for (var layout = this; layout.key != null; layout = layout.parent) {
+        keys[layout.size - 1] = layout.key;
+      }
+      return keys;
     }
   }
 
-  private static final Layout ROOT = new Layout(new LinkedHashMap<>());
+  private static final Layout ROOT = new Layout(null, null, 0);
   private static final Object[] EMPTY_ARRAY = new Object[0];
 
   private final JSObject proto;
   private final String name;
   private Layout layout = ROOT;
-  private Object[] array = EMPTY_ARRAY;
+  private Object[] array;
+  private int size;  // number of slots used in the array
   private final MethodHandle mh;
-  private SwitchPoint switchPoint = new SwitchPoint();
+  private SwitchPoint switchPoint;  // lazily allocated by switchPoint()
+  private PropertyCell[] cells;  // lazily allocated, indexed by slot
   
   private static final class Undefined {
   	@Override public String toString() { return "undefined"; }
   }
   public static final Object UNDEFINED = new Undefined();
   
+  // the type of the method handle of a function created from an Invoker
+  private static final MethodType INVOKER_TYPE = MethodType.methodType(Object.class, Object.class, Object[].class);
   private static final MethodHandle INVOKER;
+  private static final MethodHandle BINARY_OPERATOR;
   static {
     try {
-      INVOKER = MethodHandles.lookup().findVirtual(Invoker.class, "invoke", MethodType.methodType(Object.class, Object.class, Object[].class));
+      INVOKER = MethodHandles.lookup().findVirtual(Invoker.class, "invoke", INVOKER_TYPE);
+      BINARY_OPERATOR = MethodHandles.lookup().findVirtual(BiFunction.class, "apply", MethodType.methodType(Object.class, Object.class, Object.class));
     } catch (NoSuchMethodException | IllegalAccessException e) {
       throw new AssertionError(e);
     }
@@ -78,23 +170,46 @@ public final class JSObject {
     ));
   }
 
-  private JSObject(JSObject proto, String name, MethodHandle mh) {
+  private JSObject(JSObject proto, String name, MethodHandle mh, int capacity) {
     this.proto = proto;
     this.name = name;
     this.mh = mh;
+    this.array = capacity == 0 ? EMPTY_ARRAY : new Object[capacity];
+  }
+  private JSObject(JSObject proto, String name, MethodHandle mh) {
+    this(proto, name, mh, 0);
   }
   
   public static JSObject newObject(JSObject proto) {
     return new JSObject(proto, "object", NO_INVOKER_MH);
   }
+  // capacity is the expected number of keys, the object can still grow after
+  public static JSObject newObject(JSObject proto, int capacity) {
+    if (capacity < 0) {
+      throw new IllegalArgumentException("capacity < 0");
+    }
+    return new JSObject(proto, "object", NO_INVOKER_MH, capacity);
+  }
   public static JSObject newEnv(JSObject parent) {
     return new JSObject(parent, "env", NO_INVOKER_MH);
   }
+  public static JSObject newEnv(JSObject parent, int capacity) {
+    if (capacity < 0) {
+      throw new IllegalArgumentException("capacity < 0");
+    }
+    return new JSObject(parent, "env", NO_INVOKER_MH, capacity);
+  }
   public static JSObject newFunction(String name, Invoker invoker) {
     requireNonNull(name);
     requireNonNull(invoker);
     return newFunction(name, asMethodHandle(invoker));
   }
+  // a native function with two parameters and a fixed arity, the receiver is ignored
+  public static JSObject newBinaryFunction(String name, BinaryOperator<Object> operator) {
+    requireNonNull(name);
+    requireNonNull(operator);
+    return newFunction(name, MethodHandles.dropArguments(BINARY_OPERATOR.bindTo(operator), 0, Object.class));
+  }
   public static JSObject newFunction(String name, MethodHandle mh) {
     requireNonNull(name);
     requireNonNull(mh);
@@ -104,6 +219,9 @@ public final class JSObject {
   public String name() {
 		return name;
 	}
+  public JSObject proto() {
+    return proto;
+  }
   public MethodHandle methodHandle() {
     return mh;
   }
@@ -113,6 +231,26 @@ public final class JSObject {
     }
     return switchPoint = new SwitchPoint();  // lazy allocate
   }
+  // a switch point invalidated only when the value of the key changes, the key must exist
+  public SwitchPoint switchPoint(String key) {
+    return cell(key).switchPoint();
+  }
+  // the cell of an existing key, the cell of a key is always the same
+  public PropertyCell cell(String key) {
+    requireNonNull(key);
+    var slot = layout.slot(key);
+    if (slot == -1) {
+      throw new IllegalArgumentException("no key " + key);
+    }
+    if (cells == null || cells.length <= slot) {
+      cells = cells == null ? new PropertyCell[array.length] : Arrays.copyOf(cells, array.length);
+    }
+    var cell = cells[slot];
+    if (cell != null) {
+      return cell;
+    }
+    return cells[slot] = new PropertyCell(this, slot);  // lazy allocate
+  }
   public Object layout() {
     return layout;
   }
@@ -122,25 +260,107 @@ public final class JSObject {
   public Object fastAccess(int slot) {
     return array[slot];
   }
+  public Object layoutForward(String key) {
+    requireNonNull(key);
+    return layout.forward(key);
+  }
+  // store a value in an existing slot
+  public void fastStore(int slot, Object value) {
+    requireNonNull(value);
+    array[slot] = value;
+    invalidate(slot);
+  }
+  // add a value in a new slot, newLayout must be layoutForward(key) of the current layout
+  public void fastAdd(Object newLayout, Object value) {
+    requireNonNull(value);
+    layout = (Layout) newLayout;
+    add(value);
+    invalidate();
+  }
 
   public Object invoke(Object receiver, Object... args) {
     //System.err.println("invoke " + this + " " + receiver + " " + java.util.Arrays.toString(args));
     //System.err.println("invoke mh " + mh);
 
-    if (!mh.isVarargsCollector() && args.length != mh.type().parameterCount() - 1) {
-      throw new Failure("arguments doesn't match parameters count " + args.length + " " + (mh.type().parameterCount() - 1));
+    try {
+      if (mh.isVarargsCollector()) {
+        // a function created from an Invoker takes the arguments as an array
+        if (mh.type().equals(INVOKER_TYPE)) {
+          return (Object) mh.invokeExact(receiver, args);
+        }
+        return invokeWithArguments(receiver, args);
+      }
+      checkParameterCount(args.length);
+      // the asType() of an invoke() is cached by the method handle
+      return switch (args.length) {
+        case 0 -> mh.invoke(receiver);
+        case 1 -> mh.invoke(receiver, args[0]);
+        case 2 -> mh.invoke(receiver, args[0], args[1]);
+        case 3 -> mh.invoke(receiver, args[0], args[1], args[2]);
+        case 4 -> mh.invoke(receiver, args[0], args[1], args[2], args[3]);
+        default -> invokeWithArguments(receiver, args);
+      };
+    } catch(RuntimeException | Error e) {
+      throw e;
+    } catch (Throwable e) {
+      throw new Failure(e.getMessage(), e);
     }
-    var array = new Object[args.length + 1];
-    array[0] = receiver;
-    System.arraycopy(args, 0, array, 1, args.length);
+  }
+
+  // fixed arity versions of invoke, a fixed arity function is called without creating an array
+  public Object invoke(Object receiver) {
+    if (mh.isVarargsCollector()) {
+      return invoke(receiver, EMPTY_ARRAY);
+    }
+    checkParameterCount(0);
+    try {
+      return mh.invoke(receiver);
+    } catch(RuntimeException | Error e) {
+      throw e;
+    } catch (Throwable e) {
+      throw new Failure(e.getMessage(), e);
+    }
+  }
+  public Object invoke(Object receiver, Object arg0) {
+    if (mh.isVarargsCollector()) {
+      return invoke(receiver, new Object[] { arg0 });
+    }
+    checkParameterCount(1);
     try {
-      return mh.invokeWithArguments(array);
+      return mh.invoke(receiver, arg0);
     } catch(RuntimeException | Error e) {
       throw e;
     } catch (Throwable e) {
       throw new Failure(e.getMessage(), e);
     }
   }
+  public Object invoke(Object receiver, Object arg0, Object arg1) {
+    if (mh.isVarargsCollector()) {
+      return invoke(receiver, new Object[] { arg0, arg1 });
+    }
+    checkParameterCount(2);
+    try {
+      return mh.invoke(receiver, arg0, arg1);
+    } catch(RuntimeException | Error e) {
+      throw e;
+    } catch (Throwable e) {
+      throw new Failure(e.getMessage(), e);
+    }
+  }
+
+  private void checkParameterCount(int argumentCount) {
+    if (argumentCount != mh.type().parameterCount() - 1) {
+      throw new Failure("arguments doesn't match parameters count " + argumentCount + " " + (mh.type().parameterCount() - 1));
+    }
+  }
+
+  // slow path, prepend the receiver to the arguments
+  private Object invokeWithArguments(Object receiver, Object[] args) throws Throwable {
+    var array = new Object[args.length + 1];
+    array[0] = receiver;
+    System.arraycopy(args, 0, array, 1, args.length);
+    return mh.invokeWithArguments(array);
+  }
   
   public Object lookupOrDefault(String key, Object defaultValue) {
     requireNonNull(key);
@@ -160,29 +380,62 @@ public final class JSObject {
     var slot = layout.slot(key);
     if (slot != -1) {
       array[slot] = value;
+      invalidate(slot);
     } else {
       layout = layout.forward(key);
-      array = Arrays.copyOf(array, array.length + 1);
-      array[array.length - 1] = value;
+      add(value);
+      invalidate();
     }
+  }
 
+  // the capacity of the array grows by half, so adding n keys is amortized O(n)
+  private void add(Object value) {
+    if (size == array.length) {
+      array = Arrays.copyOf(array, Math.max(4, size + (size >> 1)));
+    }
+    array[size++] = value;
+  }
+
+  // nothing to do if nobody asked for the switch point since the last change
+  private void invalidate() {
     if (switchPoint != null) {
       SwitchPoint.invalidateAll(new SwitchPoint[]{ switchPoint });
+      switchPoint = null;
+    }
+  }
+
+  // invalidate the object and the cell of the slot (a new slot has no cell yet)
+  private void invalidate(int slot) {
+    invalidate();
+    if (cells != null && slot < cells.length && cells[slot] != null) {
+      cells[slot].invalidate();
     }
-    switchPoint = null;
   }
   
   public int length() {
-    return array.length;
+    return size;
   }
   
+  // a copy with the same proto, name, layout and values but without the cells,
+  // capacity is the expected number of keys of the copy
+  public JSObject copy(int capacity) {
+    if (capacity < 0) {
+      throw new IllegalArgumentException("capacity < 0");
+    }
+    var copy = new JSObject(proto, name, mh, Math.max(size, capacity));
+    System.arraycopy(array, 0, copy.array, 0, size);
+    copy.layout = layout;
+    copy.size = size;
+    return copy;
+  }
+
   public JSObject mirror(UnaryOperator<Object> valueMapper) {
     requireNonNull(valueMapper);
-    var mirror = newObject(null);
-    var array = this.array;
-    layout.slotMap.forEach((key, slot) -> {
-      mirror.register(key, valueMapper.apply(array[slot]));
-    });
+    var keys = layout.keys();
+    var mirror = newObject(null, keys.length);
+    for (var slot = 0; slot < keys.length; slot++) {
+      mirror.register(keys[slot], valueMapper.apply(array[slot]));
+    }
     return mirror;
   }
   
@@ -210,11 +463,12 @@ public final class JSObject {
       return;
     }
     builder.append("{ // ").append(jsObject.name).append('\n');
-    jsObject.layout.slotMap.forEach((key, slot) -> {
-      builder.append("  ").append(key).append(": ");
+    var keys = jsObject.layout.keys();
+    for (var slot = 0; slot < keys.length; slot++) {
+      builder.append("  ").append(keys[slot]).append(": ");
       toString(jsObject.array[slot], builder, seen);
       builder.append("\n");
-    });
+    }
     builder.append("  proto: ");
     toString(jsObject.proto, builder, seen);
     builder.append("\n");
@@ -0,0 +1,51 @@
+package fr.umlv.smalljs.rt;
+
+import java.lang.invoke.SwitchPoint;
+
+/**
+ * A mutable cell of a key of a {@link JSObject}, by example a global variable of the global environment.
+ * A cell is stable until the value of the key is changed, after that it stays unstable.
+ * A stable value can be seen as a constant guarded by the {@link #switchPoint()} of the cell.
+ *
+ * @see JSObject#cell(String)
+ */
+public final class PropertyCell {
+  private final JSObject object;
+  private final int slot;
+  private boolean stable = true;
+  private SwitchPoint switchPoint;
+
+  PropertyCell(JSObject object, int slot) {
+    this.object = object;
+    this.slot = slot;
+  }
+
+  public Object value() {
+    return object.fastAccess(slot);
+  }
+
+  public boolean stable() {
+    return stable;
+  }
+
+  // invalidated when the value changes
+  public SwitchPoint switchPoint() {
+    if (switchPoint != null) {
+      return switchPoint;
+    }
+    return switchPoint = new SwitchPoint();  // lazy allocate
+  }
+
+  void invalidate() {
+    stable = false;
+    if (switchPoint != null) {
+      SwitchPoint.invalidateAll(new SwitchPoint[]{ switchPoint });
+    }
+    switchPoint = null;
+  }
+
+  @Override
+  public String toString() {
+    return "cell " + slot + (stable ? " stable" : " unstable");
+  }
+}
@@ -0,0 +1,43 @@
+package fr.umlv.smalljs.rt;
+
+import java.util.Locale;
+
+/**
+ * Debug traces of the engines, disabled by default.
+ *
+ * The level of an engine is read from the system property {@code smalljs.trace.engine_name}
+ * and is stored by the engine in a static final field, so when the traces are disabled,
+ * the tests on the trace level are constant folded by the JIT.
+ */
+public final class Trace {
+  public static final int OFF = 0;
+  public static final int INFO = 1;   // generated code, native calls
+  public static final int DEBUG = 2;  // stack and heap dumps
+
+  private Trace() {
+    throw new AssertionError();
+  }
+
+  private static String property(String engine) {
+    return "smalljs.trace." + engine;
+  }
+
+  private static int parseLevel(String level) {
+    return switch (level.toLowerCase(Locale.ROOT)) {
+      case "off" -> OFF;
+      case "info" -> INFO;
+      case "debug" -> DEBUG;
+      default -> throw new IllegalArgumentException("unknown trace level " + level);
+    };
+  }
+
+  public static int level(String engine) {
+    return parseLevel(System.getProperty(property(engine), "off"));
+  }
+
+  // must be called before the engine is initialized
+  public static void enable(String engine, String level) {
+    parseLevel(level);  // validate
+    System.setProperty(property(engine), level);
+  }
+}
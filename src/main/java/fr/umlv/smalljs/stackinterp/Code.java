@@ -2,11 +2,20 @@ package fr.umlv.smalljs.stackinterp;
 
 import static java.util.Objects.requireNonNull;
 
-record Code(int[] instrs, int parameterCount, int slotCount) {
+record Code(int[] instrs, int parameterCount, int slotCount, int maxStackSize) {
 	Code {
 		if (parameterCount < 1 || slotCount < 1 || parameterCount > slotCount) {
 			throw new IllegalArgumentException("invalid parameter or slot count");
 		}
+		if (maxStackSize < 0) {
+			throw new IllegalArgumentException("invalid max stack size");
+		}
 		requireNonNull(instrs);
 	}
-}
\ No newline at end of file
+
+	// without the dictionary, the field count of a NEW is unknown, so the field values are considered
+	// to stay on the stack, the max stack size is an upper bound
+	Code(int[] instrs, int parameterCount, int slotCount) {
+		this(instrs, parameterCount, slotCount, Instructions.maxStackSize(instrs, _ -> 0));
+	}
+}
@@ -7,6 +7,12 @@ final class Dictionary {
 	private final HashMap<Object, Integer> indexMap = new HashMap<>();
 	private final ArrayList<Object> constants = new ArrayList<>();
 
+	Dictionary() {
+		// fixed indexes, see TagValues.FALSE and TagValues.TRUE
+		index(Boolean.FALSE);
+		index(Boolean.TRUE);
+	}
+
 	public int index(Object constant) {
 		return indexMap.computeIfAbsent(constant, key -> {
 			var index = constants.size();
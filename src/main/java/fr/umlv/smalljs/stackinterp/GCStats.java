@@ -0,0 +1,42 @@
+package fr.umlv.smalljs.stackinterp;
+
+/**
+ * Statistics of the garbage collector of the {@link StackInterpreter},
+ * used to choose the size of the heap.
+ * The sizes are in words (int) of the heap.
+ */
+public final class GCStats {
+	private int collections;
+	private long totalPauseNanos;
+	private long maxPauseNanos;
+	private long reclaimedWords;
+
+	void record(long pauseNanos, int reclaimed) {
+		collections++;
+		totalPauseNanos += pauseNanos;
+		maxPauseNanos = Math.max(maxPauseNanos, pauseNanos);
+		reclaimedWords += reclaimed;
+	}
+
+	public int collections() {
+		return collections;
+	}
+
+	public long totalPauseNanos() {
+		return totalPauseNanos;
+	}
+
+	public long maxPauseNanos() {
+		return maxPauseNanos;
+	}
+
+	public long reclaimedWords() {
+		return reclaimedWords;
+	}
+
+	@Override
+	public String toString() {
+		return "GC collections: " + collections + ", total pause: " + totalPauseNanos + " ns, max pause: "
+				+ maxPauseNanos + " ns, reclaimed: " + reclaimedWords + " words";
+	}
+}
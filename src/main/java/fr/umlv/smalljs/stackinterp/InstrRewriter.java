@@ -16,6 +16,7 @@ import static fr.umlv.smalljs.stackinterp.Instructions.REGISTER;
 import static fr.umlv.smalljs.stackinterp.Instructions.RET;
 import static fr.umlv.smalljs.stackinterp.Instructions.STORE;
 import static fr.umlv.smalljs.stackinterp.Instructions.SWAP;
+import static fr.umlv.smalljs.stackinterp.TagValues.decodeDictObject;
 import static fr.umlv.smalljs.stackinterp.TagValues.encodeDictObject;
 import static fr.umlv.smalljs.stackinterp.TagValues.encodeSmallInt;
 
@@ -39,8 +40,11 @@ import fr.umlv.smalljs.ast.Expr.Return;
 import fr.umlv.smalljs.ast.Expr.VarAssignment;
 import fr.umlv.smalljs.rt.Failure;
 import fr.umlv.smalljs.rt.JSObject;
+import fr.umlv.smalljs.rt.Trace;
 
 final class InstrRewriter {
+  private static final int TRACE = Trace.level("stack");
+
   static final class InstrBuffer {
     private int[] instrs;
     private int size;
@@ -89,9 +93,12 @@ final class InstrRewriter {
     buffer.emit(RET);
 
     var instrs = buffer.toInstrs();
-    Instructions.dump(instrs, dict);
+    if (TRACE >= Trace.INFO) {
+      Instructions.dump(instrs, dict);
+    }
 
-    var code = new Code(instrs, parameters.size() + 1 /* this */, env.length());
+    var maxStackSize = Instructions.maxStackSize(instrs, operand -> ((JSObject) decodeDictObject(operand, dict)).length());
+    var code = new Code(instrs, parameters.size() + 1 /* this */, env.length(), maxStackSize);
     var function = JSObject.newFunction(name, JSObject.NO_INVOKER_MH);
     function.register("__code__", code);
     return function;
@@ -213,49 +220,45 @@ final class InstrRewriter {
         buffer.patch(endPlaceHolder, buffer.label());
       }
       case ObjectLiteral(Map<String, Expr> initMap, int lineNumber) -> {
-        throw new UnsupportedOperationException("TODO ObjectLiteral");
         // create a JSObject class
-        //var clazz = JSObject.newObject(null);
+        var clazz = JSObject.newObject(null);
         // loop over all the field initializations
-        //initMap.forEach((fieldName, expr) -> {
-        //  register the field name with the right slot
-        //  clazz.register(...);
-        //   visit the initialization expression
-        //  visit(...);
-        //});
+        initMap.forEach((fieldName, expr) -> {
+          // register the field name with the right slot
+          clazz.register(fieldName, clazz.length());
+          // visit the initialization expression
+          visit(expr, env, buffer, dict);
+        });
         // emit a NEW with the class
-        //buffer.emit(...).emit(...);
+        buffer.emit(NEW).emit(encodeDictObject(clazz, dict));
       }
       case FieldAccess(Expr receiver, String name, int lineNumber) -> {
-        throw new UnsupportedOperationException("TODO FieldAccess");
         // visit the receiver
-        //visit(...);
+        visit(receiver, env, buffer, dict);
         // emit a GET with the field name
-        //buffer.emit(...).emit(...);
+        buffer.emit(GET).emit(encodeDictObject(name, dict));
       }
       case FieldAssignment(Expr receiver, String name, Expr expr, int lineNumber) -> {
-        throw new UnsupportedOperationException("TODO FieldAssignment");
         // visit the receiver
-        //visit(...);
+        visit(receiver, env, buffer, dict);
         // visit the expression
-        //visit(...);
+        visit(expr, env, buffer, dict);
         // emit a PUT with the field name
-        //buffer.emit(...).emit(...);
+        buffer.emit(PUT).emit(encodeDictObject(name, dict));
       }
       case MethodCall(Expr receiver, String name, List<Expr> args, int lineNumber) -> {
-        throw new UnsupportedOperationException("TODO MethodCall");
         // visit the receiver
-        //visit(...);
+        visit(receiver, env, buffer, dict);
         // emit a DUP, get the field name and emit a SWAP of the qualifier and the receiver
-        //buffer.emit(DUP);
-        //buffer.emit(...).emit(...);
-        //buffer.emit(SWAP);
+        buffer.emit(DUP);
+        buffer.emit(GET).emit(encodeDictObject(name, dict));
+        buffer.emit(SWAP);
         // visit all arguments
-        //for (var arg : args) {
-        //visit(...);
-        //}
+        for (var arg : args) {
+          visit(arg, env, buffer, dict);
+        }
         // emit the funcall
-        //buffer.emit(...).emit(...);
+        buffer.emit(FUNCALL).emit(args.size());
       }
     }
   }
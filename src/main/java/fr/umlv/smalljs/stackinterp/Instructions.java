@@ -1,5 +1,8 @@
 package fr.umlv.smalljs.stackinterp;
 
+import java.util.Arrays;
+import java.util.function.IntUnaryOperator;
+
 interface Instructions {
 	int CONST = 1; // CONST tag_value (smallint or dictionary_index)
 	int LOOKUP = 2; // LOOKUP dictionary_index (String global_name)
@@ -19,6 +22,45 @@ interface Instructions {
 
 	int PRINT = 20;
 
+	// compute the maximum size of the local stack in one pass, the stack height at a label is the one
+	// of the forward jumps to that label, backward jumps (loops) are supposed to jump with the same height
+	static int maxStackSize(int[] instrs, IntUnaryOperator fieldCount) {
+		var heights = new int[instrs.length + 1];
+		Arrays.fill(heights, -1);
+		var height = 0;
+		var max = 0;
+		for (var pc = 0; pc < instrs.length;) {
+			height = Math.max(height, heights[pc]);
+			var instr = instrs[pc++];
+			switch (instr) {
+				case CONST, LOOKUP, LOAD, DUP -> height++;
+				case REGISTER, STORE, POP -> height--;
+				case SWAP, GET, PRINT -> {}
+				case PUT -> height -= 2;
+				case FUNCALL -> height -= instrs[pc] + 1;  // arguments, receiver and qualifier -> result
+				case NEW -> height += 1 - fieldCount.applyAsInt(instrs[pc]);
+				case JUMP_IF_FALSE -> {
+					height--;
+					var label = instrs[pc];
+					heights[label] = Math.max(heights[label], height);
+				}
+				case GOTO -> {
+					var label = instrs[pc];
+					heights[label] = Math.max(heights[label], height);
+					height = 0;  // unreachable until a label
+				}
+				case RET -> height = 0;  // unreachable until a label
+				default -> throw new AssertionError("unknown instr " + instr);
+			}
+			switch (instr) {
+				case DUP, POP, SWAP, RET, PRINT -> {}
+				default -> pc++;  // skip the operand
+			}
+			max = Math.max(max, height);
+		}
+		return max;
+	}
+
 	static void dump(int[] instrs, Dictionary dict) {
 		var strings = new String[] { null, "CONST", "LOOKUP", "REGISTER", "LOAD", "STORE", "DUP", "POP", "SWAP",
 				"FUNCALL", "RET", "GOTO", "JUMP_IF_FALSE", "NEW", "GET", "PUT", null, null, null, null, "PRINT" };
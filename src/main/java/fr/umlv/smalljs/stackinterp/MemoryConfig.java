@@ -0,0 +1,21 @@
+package fr.umlv.smalljs.stackinterp;
+
+/**
+ * Sizes (in words) of the stack and of the heap of the {@link StackInterpreter}.
+ * The stack and the heap start with their initial size and grow up to their maximum size.
+ */
+public record MemoryConfig(int initialStackSize, int maxStackSize, int initialHeapSize, int maxHeapSize) {
+	// a reference is encoded on 30 bits
+	private static final int MAX_HEAP_SIZE = 1 << 29;
+
+	public static final MemoryConfig DEFAULT = new MemoryConfig(4096, 1 << 20, 4096, 1 << 24);
+
+	public MemoryConfig {
+		if (initialStackSize < 1 || initialStackSize > maxStackSize) {
+			throw new IllegalArgumentException("invalid stack size " + initialStackSize + " " + maxStackSize);
+		}
+		if (initialHeapSize < 1 || initialHeapSize > maxHeapSize || maxHeapSize > MAX_HEAP_SIZE) {
+			throw new IllegalArgumentException("invalid heap size " + initialHeapSize + " " + maxHeapSize);
+		}
+	}
+}
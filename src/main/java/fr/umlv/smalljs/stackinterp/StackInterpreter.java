@@ -7,17 +7,23 @@ import java.io.PrintStream;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.IntConsumer;
 import java.util.stream.Collectors;
 
 import fr.umlv.smalljs.ast.Script;
+import fr.umlv.smalljs.rt.Builtins;
 import fr.umlv.smalljs.rt.Failure;
 import fr.umlv.smalljs.rt.JSObject;
+import fr.umlv.smalljs.rt.PropertyCell;
+import fr.umlv.smalljs.rt.Trace;
 
 // Pile ou interpreteur à registre pour performance
 // Interpreteur à registre: beaucoup de code
 // Pile: moins de code (sommet de pile)
 
 public final class StackInterpreter {
+	private static final int TRACE = Trace.level("stack");
+
 	private static void push(int[] stack, int sp, int value) {
 		stack[sp] = value;
 	}
@@ -78,19 +84,170 @@ public final class StackInterpreter {
 	private static final int QUALIFIER_BASE_ARG_OFFSET = -2;
 	private static final int FUNCALL_PREFIX = 2;
 
+	private static int objectSize(int[] heap, int ref, Dictionary dict) {
+		var clazz = (JSObject) decodeDictObject(heap[ref], dict);
+		return OBJECT_HEADER_SIZE + clazz.length();
+	}
+
+	// call the consumer with the index of all stack slots that may contain a reference,
+	// the activation zones contain raw ints so they are skipped
+	private static void visitRoots(int[] stack, int sp, int bp, Code code, Dictionary dict, IntConsumer consumer) {
+		var top = sp;
+		for (;;) {
+			var activation = bp + code.slotCount();
+			// local variables
+			for (var i = bp; i < activation; i++) {
+				consumer.accept(i);
+			}
+			// local stack
+			for (var i = activation + ACTIVATION_SIZE; i < top; i++) {
+				consumer.accept(i);
+			}
+			if (bp == 0) { // main function
+				return;
+			}
+			// the local stack of the caller ends before the receiver of the callee
+			top = bp;
+			var function = (JSObject) decodeDictObject(stack[activation + FUN_OFFSET], dict);
+			code = (Code) function.lookupOrDefault("__code__", null);
+			bp = stack[activation + BP_OFFSET];
+		}
+	}
+
+	private static void mark(int value, int[] heap, Dictionary dict, int[] worklist) {
+		if (!isReference(value)) {
+			return;
+		}
+		var root = decodeReference(value);
+		if (heap[root + GC_OFFSET] == GC_MARK) {
+			return;
+		}
+		heap[root + GC_OFFSET] = GC_MARK;
+
+		// an object is added to the worklist only once, so the worklist can not contain more than all the objects
+		var size = 0;
+		worklist[size++] = root;
+		while (size != 0) {
+			var ref = worklist[--size];
+			var end = ref + objectSize(heap, ref, dict);
+			for (var i = ref + OBJECT_HEADER_SIZE; i < end; i++) {
+				var fieldValue = heap[i];
+				if (isReference(fieldValue)) {
+					var fieldRef = decodeReference(fieldValue);
+					if (heap[fieldRef + GC_OFFSET] != GC_MARK) {
+						heap[fieldRef + GC_OFFSET] = GC_MARK;
+						worklist[size++] = fieldRef;
+					}
+				}
+			}
+		}
+	}
+
+	private static int relocate(int value, int[] heap) {
+		if (!isReference(value)) {
+			return value;
+		}
+		return encodeReference(heap[decodeReference(value) + GC_OFFSET]);
+	}
+
+	// in place mark and compact GC, return the new heap pointer
+	private static int gc(int[] stack, int sp, int bp, Code code, int[] heap, int hp, Dictionary dict, GCStats stats) {
+		var start = System.nanoTime();
+
+		// 1. scan the stack and mark all reachable objects
+		var worklist = new int[hp / OBJECT_HEADER_SIZE];
+		visitRoots(stack, sp, bp, code, dict, slot -> mark(stack[slot], heap, dict, worklist));
+
+		// 2. compute the new address of all live objects and store it in the GC slot
+		var newHp = 0;
+		for (var ref = 0; ref < hp;) {
+			var size = objectSize(heap, ref, dict);
+			if (heap[ref + GC_OFFSET] == GC_MARK) {
+				heap[ref + GC_OFFSET] = newHp;
+				newHp += size;
+			}
+			ref += size;
+		}
+
+		// 3. check if memory can be freed
+		if (newHp != hp) {
+			// 4. rewrite the fields of the live objects
+			for (var ref = 0; ref < hp;) {
+				var size = objectSize(heap, ref, dict);
+				if (heap[ref + GC_OFFSET] >= 0) {
+					for (var i = ref + OBJECT_HEADER_SIZE; i < ref + size; i++) {
+						heap[i] = relocate(heap[i], heap);
+					}
+				}
+				ref += size;
+			}
+
+			// 5. rewrite the stack
+			visitRoots(stack, sp, bp, code, dict, slot -> stack[slot] = relocate(stack[slot], heap));
+		}
+
+		// 6. move the live objects to their new addresses and reset the GC slot
+		for (var ref = 0; ref < hp;) {
+			var size = objectSize(heap, ref, dict);
+			var newRef = heap[ref + GC_OFFSET];
+			if (newRef >= 0) {
+				heap[ref + GC_OFFSET] = GC_EMPTY;
+				System.arraycopy(heap, ref, heap, newRef, size);
+			}
+			ref += size;
+		}
+
+		stats.record(System.nanoTime() - start, hp - newHp);
+		return newHp;
+	}
+
+	// grow the stack so a stack frame ending at frameEnd can be pushed
+	private static int[] growStack(int[] stack, int frameEnd, MemoryConfig config) {
+		if (frameEnd > config.maxStackSize()) {
+			throw new Failure("stack overflow");
+		}
+		var newLength = (int) Math.min(config.maxStackSize(), Math.max(frameEnd, (long) stack.length << 1));
+		return Arrays.copyOf(stack, newLength);
+	}
+
+	// grow the heap to at least minLength
+	private static int[] growHeap(int[] heap, int minLength, MemoryConfig config) {
+		var newLength = (int) Math.min(config.maxHeapSize(), Math.max(minLength, (long) heap.length << 1));
+		if (newLength < minLength) {
+			throw new Failure("out of memory");
+		}
+		if (newLength == heap.length) {
+			return heap;
+		}
+		return Arrays.copyOf(heap, newLength);
+	}
+
 	public static Object execute(JSObject function, Dictionary dict, JSObject globalEnv) {
-		var stack = new int[96 /* 4096 */];
-		var heap = new int[96 /* 4096 */];
+		return execute(function, dict, globalEnv, MemoryConfig.DEFAULT, new GCStats());
+	}
+
+	static Object execute(JSObject function, Dictionary dict, JSObject globalEnv, MemoryConfig config, GCStats stats) {
+		var stack = new int[config.initialStackSize()];
+		var heap = new int[config.initialHeapSize()];
 		var code = (Code) function.lookupOrDefault("__code__", null);
 		var instrs = code.instrs();
 
 		var undefined = encodeDictObject(UNDEFINED, dict);
 
+		// the cells of the global variables, indexed by the dictionary index of their name
+		var cells = new PropertyCell[16];
+
 		var hp = 0; // heap pointer
 		var pc = 0; // instruction pointer
 		var bp = 0; // base pointer
 		var sp = bp + code.slotCount() + ACTIVATION_SIZE; // stack pointer
 
+		// the stack must contain the whole stack frame, so there is no check when pushing a value
+		var mainFrameEnd = sp + code.maxStackSize();
+		if (mainFrameEnd > stack.length) {
+			stack = growStack(stack, mainFrameEnd, config);
+		}
+
 		// initialize all local variables
 		for (var i = 0; i < code.slotCount(); i++) {
 			stack[i] = undefined;
@@ -105,18 +262,27 @@ public final class StackInterpreter {
 				case Instructions.LOOKUP -> {
 					// find the current instruction
 					int indexTagValue = instrs[pc++];
-					// decode the name from the instruction
-					String name = (String) decodeAnyValue(indexTagValue, dict, heap);
-					// lookup the name
-					var globalValue = globalEnv.lookupOrDefault(name, null);
-					// if it does not exist throw a failure
-					if (globalValue == null) {
-						throw new Failure("unknown global variable " + name);
+					// find the cell of the global variable, a cell never changes once created
+					var index = decodeDictIndex(indexTagValue);
+					if (index >= cells.length) {
+						cells = Arrays.copyOf(cells, Math.max(cells.length << 1, index + 1));
+					}
+					var cell = cells[index];
+					if (cell == null) {
+						// decode the name from the instruction
+						String name = (String) decodeDictObject(indexTagValue, dict);
+						// if it does not exist throw a failure
+						if (globalEnv.layoutSlot(name) == -1) {
+							throw new Failure("unknown global variable " + name);
+						}
+						cell = cells[index] = globalEnv.cell(name);
 					}
 					// otherwise push as any anyValue
-					push(stack, sp++, encodeAnyValue(globalValue, dict));
+					push(stack, sp++, encodeAnyValue(cell.value(), dict));
 
-					dumpStack("in lookup", stack, sp, bp, dict, heap);
+					if (TRACE >= Trace.DEBUG) {
+						dumpStack("in lookup", stack, sp, bp, dict, heap);
+					}
 				}
 				case Instructions.REGISTER -> {
 					// find the current instruction
@@ -155,19 +321,19 @@ public final class StackInterpreter {
 					--sp;
 				}
 				case Instructions.SWAP -> {
-					throw new UnsupportedOperationException("TODO SWAP");
 					// pop first value from the stack
-					//var value1 = ...
+					var value1 = pop(stack, --sp);
 					// pop second value from the stack
-					//var value2 = ...
+					var value2 = pop(stack, --sp);
 					// push first value on top of the stack
-					//push(...);
+					push(stack, sp++, value1);
 					// push second value on top of the stack
-					//push(...);
+					push(stack, sp++, value2);
 				}
 				case Instructions.FUNCALL -> {
-					// DEBUG
-					dumpStack(">start funcall dump", stack, sp, bp, dict, heap);
+					if (TRACE >= Trace.DEBUG) {
+						dumpStack(">start funcall dump", stack, sp, bp, dict, heap);
+					}
 
 					// find argument count
 					var argumentCount = instrs[pc++];
@@ -180,31 +346,36 @@ public final class StackInterpreter {
 					// decode qualifier
 					var newFunction = (JSObject) decodeAnyValue(stack[baseArg + QUALIFIER_BASE_ARG_OFFSET], dict, heap);
 
-					//{ // DEBUG
-					//	var receiver = decodeAnyValue(stack[baseArg + RECEIVER_BASE_ARG_OFFSET], dict, heap);
-					//	var args = new Object[argumentCount];
-					//	for (var i = 0; i < argumentCount; i++) {
-					//		args[i] = decodeAnyValue(stack[baseArg + i], dict, heap);
-					//	}
-					//	System.err.println("funcall " + newFunction.getName() + " with " + receiver + " " + Arrays.toString(args));
-					//}
-
 					// check if the function contains a code attribute
 					var maybeCode = newFunction.lookupOrDefault("__code__", null);
 					if (maybeCode == null) { // native call !
 					  // decode receiver
 					  var receiver = decodeAnyValue(stack[baseArg + RECEIVER_BASE_ARG_OFFSET], dict, heap);
 
-					  // decode arguments
-					  var args = new Object[argumentCount];
-					  for (var i = 0; i < argumentCount; i++) {
-					  	args[i] = decodeAnyValue(stack[baseArg + i], dict, heap);
+					  if (TRACE >= Trace.INFO) {
+					  	var args = new Object[argumentCount];
+					  	for (var i = 0; i < argumentCount; i++) {
+					  		args[i] = decodeAnyValue(stack[baseArg + i], dict, heap);
+					  	}
+					  	System.err.println("call native " + newFunction.name() + " with " + receiver + " " + Arrays.toString(args));
 					  }
 
-                      System.err.println("call native " + newFunction.name() + " with " + receiver + " " + java.util.Arrays.toString(args));
-
-					  // call native function
-					  var result = encodeAnyValue(newFunction.invoke(receiver, args), dict);
+					  // call native function, decode arguments
+					  // (no array is created for a function with a fixed arity and less than 3 arguments)
+					  var value = switch (argumentCount) {
+					  	case 0 -> newFunction.invoke(receiver);
+					  	case 1 -> newFunction.invoke(receiver, decodeAnyValue(stack[baseArg], dict, heap));
+					  	case 2 -> newFunction.invoke(receiver,
+					  			decodeAnyValue(stack[baseArg], dict, heap), decodeAnyValue(stack[baseArg + 1], dict, heap));
+					  	default -> {
+					  		var args = new Object[argumentCount];
+					  		for (var i = 0; i < argumentCount; i++) {
+					  			args[i] = decodeAnyValue(stack[baseArg + i], dict, heap);
+					  		}
+					  		yield newFunction.invoke(receiver, args);
+					  	}
+					  };
+					  var result = encodeAnyValue(value, dict);
 
 					  // fixup sp (receiver and function must be dropped)
 					  sp = baseArg - FUNCALL_PREFIX;
@@ -223,9 +394,14 @@ public final class StackInterpreter {
 								+ (code.parameterCount() - 1) + " but was " + argumentCount);
 					}
 
-					// save bp/pc/code in activation zone
-//					 stack[activation + offset] = ??
+					// check that the new stack frame fits in the stack
 					var activation = baseArg - 1 + code.slotCount();
+					var frameEnd = activation + ACTIVATION_SIZE + code.maxStackSize();
+					if (frameEnd > stack.length) {
+						stack = growStack(stack, frameEnd, config);
+					}
+
+					// save bp/pc/code in activation zone
 					stack[activation + BP_OFFSET] = bp;
 					stack[activation + PC_OFFSET] = pc;
 					stack[activation + FUN_OFFSET] = encodeDictObject(function, dict);
@@ -244,17 +420,21 @@ public final class StackInterpreter {
 					function = newFunction;
 					instrs = code.instrs();
 
-					// DEBUG
-					dumpStack(">end funcall dump", stack, sp, bp, dict, heap);
+					if (TRACE >= Trace.DEBUG) {
+						dumpStack(">end funcall dump", stack, sp, bp, dict, heap);
+					}
 				}
 				case Instructions.RET -> {
-					// DEBUG
-					dumpStack("> start ret dump", stack, sp, bp, dict, heap);
+					if (TRACE >= Trace.DEBUG) {
+						dumpStack("> start ret dump", stack, sp, bp, dict, heap);
+					}
 
 					// get the return value from the top of the stack
 					var result = pop(stack, --sp);
 
-					System.err.println("ret " + decodeAnyValue(result, dict, heap));
+					if (TRACE >= Trace.INFO) {
+						System.err.println("ret " + decodeAnyValue(result, dict, heap));
+					}
 
 					// find activation and restore pc
 					var activation = bp + code.slotCount();
@@ -276,8 +456,9 @@ public final class StackInterpreter {
 					// push return value
 					push(stack, sp++, result);
 
-					// DEBUG
-					 dumpStack("> end ret dump", stack, sp, bp, dict, heap);
+					if (TRACE >= Trace.DEBUG) {
+						dumpStack("> end ret dump", stack, sp, bp, dict, heap);
+					}
 				}
 				case Instructions.GOTO -> {
 					// get the label
@@ -289,8 +470,8 @@ public final class StackInterpreter {
 					var label = instrs[pc++];
 					// get the value on top of the stack
 					var condition = pop(stack, --sp);
-					// if condition is false change the program counter to the label
-					if (condition == TagValues.FALSE) {
+					// if condition is false (false or 0) change the program counter to the label
+					if (condition == TagValues.FALSE || condition == encodeSmallInt(0)) {
 						pc = label;
 					}
 				}
@@ -300,12 +481,19 @@ public final class StackInterpreter {
 					var clazz = (JSObject) decodeDictObject(vClass, dict);
 
 					// out of memory ?
-					if (hp + OBJECT_HEADER_SIZE + clazz.length() >= heap.length) {
-						dumpHeap("before GC ", heap, hp, dict);
-
-						throw new UnsupportedOperationException("TODO !!! GC !!!");
-
-//						dumpHeap("after GC ", heap, hp, dict);
+					var objectSize = OBJECT_HEADER_SIZE + clazz.length();
+					if (hp + objectSize >= heap.length) {
+						if (TRACE >= Trace.DEBUG) {
+							dumpHeap("before GC ", heap, hp, dict);
+						}
+						hp = gc(stack, sp, bp, code, heap, hp, dict, stats);
+						if (TRACE >= Trace.DEBUG) {
+							dumpHeap("after GC ", heap, hp, dict);
+						}
+						// grow the heap if the object does not fit or if the live objects use more than half of the heap
+						if (hp + objectSize >= heap.length || hp > heap.length >> 1) {
+							heap = growHeap(heap, hp + objectSize + 1, config);
+						}
 					}
 
 					var ref = hp;
@@ -321,7 +509,7 @@ public final class StackInterpreter {
 					}
 					// adjust stack pointer and heap pointer
 					sp = baseArg;
-					hp += OBJECT_HEADER_SIZE + clazz.length();
+					hp += objectSize;
 
 					// push the reference on top of the stack
 					push(stack, sp++, encodeReference(ref));
@@ -355,26 +543,25 @@ public final class StackInterpreter {
 					push(stack, sp++, fieldValue); // already encoded
 				}
 				case Instructions.PUT -> {
-					throw new UnsupportedOperationException("TODO PUT");
 					// get field name from the instructions
-					// var fieldName = (String) ...
+					var fieldName = (String) decodeDictObject(instrs[pc++], dict);
 					// get new value from the top of the stack
-					//var value = ...
+					var value = pop(stack, --sp);
 					// get reference from the top of the stack
-					// var ref = decodeReference(...);
+					var ref = decodeReference(pop(stack, --sp));
 					// get class on heap from the reference
-					//var vClass = heap[ref];
+					var vClass = heap[ref];
 					// get JSObject from class
-					//var clazz = (JSObject) decodeDictObject(vClass, dict);
+					var clazz = (JSObject) decodeDictObject(vClass, dict);
 					// get field slot from JSObject
-					//var slot = ...
-					//if (slot == null) {
-					//	throw new Failure("invalid field " + fieldName);
-					//}
+					var slot = clazz.lookupOrDefault(fieldName, null);
+					if (slot == null) {
+						throw new Failure("invalid field " + fieldName);
+					}
 					// get the field index
-					//var fieldIndex = ...
+					var fieldIndex = (int) slot;
 					// store field value from the top of the stack on heap
-					//heap[...] = ...;
+					heap[ref + OBJECT_HEADER_SIZE + fieldIndex] = value;
 				}
 				case Instructions.PRINT -> {
 					// pop the value on top of the stack
@@ -394,34 +581,27 @@ public final class StackInterpreter {
 	}
 
 
-	@SuppressWarnings("unchecked")
 	static JSObject createGlobalEnv(PrintStream outStream) {
-		var globalEnv = JSObject.newEnv(null);
-		globalEnv.register("globalThis", globalEnv);
+		var globalEnv = Builtins.newGlobalEnv();
 		globalEnv.register("print", JSObject.newFunction("print", (_, args) -> {
-			System.err.println("print called with " + Arrays.toString(args));
+			if (TRACE >= Trace.INFO) {
+				System.err.println("print called with " + Arrays.toString(args));
+			}
 			outStream.println(Arrays.stream(args).map(Object::toString).collect(Collectors.joining(" ")));
 			return UNDEFINED;
 		}));
-		globalEnv.register("+", JSObject.newFunction("+", (_, args) -> (Integer) args[0] + (Integer) args[1]));
-		globalEnv.register("-", JSObject.newFunction("-", (_, args) -> (Integer) args[0] - (Integer) args[1]));
-		globalEnv.register("/", JSObject.newFunction("/", (_, args) -> (Integer) args[0] / (Integer) args[1]));
-		globalEnv.register("*", JSObject.newFunction("*", (_, args) -> (Integer) args[0] * (Integer) args[1]));
-		globalEnv.register("%", JSObject.newFunction("%", (_, args) -> (Integer) args[0] % (Integer) args[1]));
-		globalEnv.register("==", JSObject.newFunction("==", (_, args) -> args[0].equals(args[1]) ? 1 : 0));
-		globalEnv.register("!=", JSObject.newFunction("!=", (_, args) -> !args[0].equals(args[1]) ? 1 : 0));
-		globalEnv.register("<", JSObject.newFunction("<", (_, args) -> (((Comparable<Object>) args[0]).compareTo(args[1]) < 0) ? 1 : 0));
-		globalEnv.register("<=", JSObject.newFunction("<=", (_, args) -> (((Comparable<Object>) args[0]).compareTo(args[1]) <= 0) ? 1 : 0));
-		globalEnv.register(">", JSObject.newFunction(">", (_, args) -> (((Comparable<Object>) args[0]).compareTo(args[1]) > 0) ? 1 : 0));
-		globalEnv.register(">=", JSObject.newFunction(">=", (_, args) -> (((Comparable<Object>) args[0]).compareTo(args[1]) >= 0) ? 1 : 0));
 		return globalEnv;
 	}
 
 	public static void interpret(Script script, PrintStream outStream) {
+		interpret(script, outStream, MemoryConfig.DEFAULT, new GCStats());
+	}
+
+	public static void interpret(Script script, PrintStream outStream, MemoryConfig config, GCStats stats) {
 		var globalEnv = createGlobalEnv(outStream);
 		var body = script.body();
 		var dictionary = new Dictionary();
 		var function = InstrRewriter.createFunction("main", List.of(), body, dictionary);
-		execute(function, dictionary, globalEnv);
+		execute(function, dictionary, globalEnv, config, stats);
 	}
 }
@@ -5,8 +5,8 @@ import fr.umlv.smalljs.rt.JSObject;
 interface TagValues {
 	// every value are stored as 32 bits integer, boolean, small ints, constant (dictionary object) and reference
 	// the suffix indicates the kind of value
-	//    1 -> small integers (SmallInt) or boolean (TRUE/FALSE)
-	//   10 -> dictionary index
+	//    1 -> small integers (SmallInt)
+	//   10 -> dictionary index (the booleans TRUE/FALSE have a fixed index)
 	//   00 -> reference 
 	
   static boolean isSmallInt(int value) {
@@ -23,8 +23,11 @@ interface TagValues {
   static int encodeDictObject(Object object, Dictionary dict) {
     return dict.index(object) << 2 | 0b10;
   }
+  static int decodeDictIndex(int value) {
+    return value >>> 2;
+  }
   static Object decodeDictObject(int value, Dictionary dict) {
-    return dict.getConst(value >>> 2);
+    return dict.getConst(decodeDictIndex(value));
   }
   
   static boolean isReference(int value) {
@@ -53,11 +56,16 @@ interface TagValues {
   	if (object instanceof Integer smallInt && smallInt >= 0) {
       return encodeSmallInt(smallInt);
     }
+    // a boolean is a dictionary object with a fixed index
+    if (object instanceof Boolean bool) {
+      return bool ? TRUE : FALSE;
+    }
     return encodeDictObject(object, dict);
   }
 
-  int TRUE = encodeSmallInt(1);
-  int FALSE = encodeSmallInt(0);
+  // Boolean.FALSE and Boolean.TRUE are the first constants of every Dictionary
+  int FALSE = 0 << 2 | 0b10;
+  int TRUE = 1 << 2 | 0b10;
   
   int OBJECT_HEADER_SIZE = 2;  // CLASS_DESCRIPTOR + GC_POINTER
 }
@@ -0,0 +1,86 @@
+package fr.umlv.smalljs.ast;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.concurrent.Executors;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+
+public class ScriptCacheTest {
+  @Test
+  public void sameCodeIsParsedOnce() {
+    var cache = new ScriptCache(8);
+    var script1 = cache.createScript("print('hello');");
+    var script2 = cache.createScript("print('hello');");
+
+    assertAll(
+        () -> assertSame(script1, script2),
+        () -> assertEquals(1, cache.hits()),
+        () -> assertEquals(1, cache.misses()),
+        () -> assertEquals(1, cache.size())
+    );
+  }
+
+  @Test
+  public void sameContentDifferentStrings() {
+    var cache = new ScriptCache(8);
+    var code = "print(" + 42 + ");";
+    var script1 = cache.createScript(code);
+    var script2 = cache.createScript(new String(code));
+
+    assertSame(script1, script2);
+  }
+
+  @Test
+  public void leastRecentlyUsedIsEvicted() {
+    var cache = new ScriptCache(2);
+    var scriptA = cache.createScript("var a = 1;");
+    cache.createScript("var b = 2;");
+    cache.createScript("var a = 1;");  // a is now more recent than b
+    cache.createScript("var c = 3;");  // evicts b
+
+    assertAll(
+        () -> assertEquals(2, cache.size()),
+        () -> assertSame(scriptA, cache.createScript("var a = 1;")),
+        () -> assertEquals(2, cache.hits()),
+        () -> assertEquals(3, cache.misses())
+    );
+    cache.createScript("var b = 2;");
+    assertEquals(4, cache.misses());
+  }
+
+  @Test
+  public void sharedScriptIsImmutable() {
+    var cache = new ScriptCache(8);
+    var script = cache.createScript("var o = { x: 1 };");
+    var assignment = (Expr.VarAssignment) script.body().exprs().getFirst();
+    var literal = (Expr.ObjectLiteral) assignment.expr();
+
+    assertAll(
+        () -> assertThrows(UnsupportedOperationException.class, () -> script.body().exprs().clear()),
+        () -> assertThrows(UnsupportedOperationException.class, () -> literal.initMap().clear())
+    );
+  }
+
+  @Test
+  public void concurrentAccess() throws Exception {
+    var cache = new ScriptCache(4);
+    try (var executor = Executors.newFixedThreadPool(4)) {
+      var futures = IntStream.range(0, 1_000)
+          .mapToObj(i -> executor.submit(() -> cache.createScript("print(" + (i % 8) + ");")))
+          .toList();
+      for (var future : futures) {
+        assertNotNull(future.get());
+      }
+    }
+    assertAll(
+        () -> assertEquals(1_000, cache.hits() + cache.misses()),
+        () -> assertTrue(cache.size() <= 4)
+    );
+  }
+
+  @Test
+  public void invalidMaxSize() {
+    assertThrows(IllegalArgumentException.class, () -> new ScriptCache(0));
+  }
+}
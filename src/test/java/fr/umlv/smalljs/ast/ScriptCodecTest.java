@@ -0,0 +1,155 @@
+package fr.umlv.smalljs.ast;
+
+import static fr.umlv.smalljs.ast.ASTBuilder.createScript;
+import static org.junit.jupiter.api.Assertions.*;
+
+import fr.umlv.smalljs.rt.JSObject;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class ScriptCodecTest {
+  private static Script roundTrip(Script script) {
+    return ScriptCodec.decode(ScriptCodec.encode(script));
+  }
+
+  @Test
+  public void roundTripAllExpressions() {
+    var script = createScript("""
+        var o = { x: 1, "y": "hello", z: function(a, b) { return a + b; } };
+        o.x = 2;
+        function f(n) {
+          if (n < 2) {
+            return o.z(n, o.x);
+          } else {
+            print("é", n);
+          }
+          return;
+        }
+        var lambda = function() { return f(3); };
+        print(lambda());
+        """);
+    assertEquals(script, roundTrip(script));
+  }
+
+  @Test
+  public void roundTripLineNumbers() {
+    var script = createScript("""
+        print(1);
+
+
+        print(2);
+        """);
+    var decoded = roundTrip(script);
+    var exprs = decoded.body().exprs();
+    assertAll(
+        () -> assertEquals(1, exprs.get(0).lineNumber()),
+        () -> assertEquals(4, exprs.get(1).lineNumber())
+    );
+  }
+
+  @Test
+  public void roundTripLiterals() {
+    var initMap = new LinkedHashMap<String, Expr>();
+    initMap.put("b", new Expr.Literal(Integer.MIN_VALUE, 3));
+    initMap.put("a", new Expr.Literal(Integer.MAX_VALUE, 3));
+    var script = new Script(new Expr.Block(List.of(
+        new Expr.Literal(-1, 1),
+        new Expr.Literal(0, 1),
+        new Expr.Literal(JSObject.UNDEFINED, 2),
+        new Expr.Literal("", 2),
+        new Expr.ObjectLiteral(initMap, 3)), 1));
+    var decoded = roundTrip(script);
+
+    assertAll(
+        () -> assertEquals(script, decoded),
+        () -> assertSame(JSObject.UNDEFINED, ((Expr.Literal) decoded.body().exprs().get(2)).value()),
+        () -> assertEquals(List.of("b", "a"),
+            List.copyOf(((Expr.ObjectLiteral) decoded.body().exprs().get(4)).initMap().keySet()))
+    );
+  }
+
+  @Test
+  public void stringsAreShared() {
+    var script = createScript("""
+        print("a very long string used several times");
+        print("a very long string used several times");
+        print("a very long string used several times");
+        """);
+    var bytes = ScriptCodec.encode(script);
+    var occurrences = 0;
+    var needle = "a very long string".getBytes();
+    for (var i = 0; i <= bytes.length - needle.length; i++) {
+      if (Arrays.equals(bytes, i, i + needle.length, needle, 0, needle.length)) {
+        occurrences++;
+      }
+    }
+    assertEquals(1, occurrences);
+  }
+
+  @Test
+  public void validHandWrittenInput() {
+    // no string, an empty block (tag 0) at line 1
+    assertEquals(new Expr.Block(List.of(), 1), ScriptCodec.decode(script(0, 0, 1, 0)).body());
+  }
+
+  @Test
+  public void invalidInputs() {
+    var bytes = ScriptCodec.encode(createScript("print(1);"));
+    assertAll(
+        () -> assertThrows(IllegalArgumentException.class, () -> ScriptCodec.decode(new byte[0])),
+        () -> assertThrows(IllegalArgumentException.class, () -> ScriptCodec.decode("print(1);".getBytes())),
+        () -> assertThrows(IllegalArgumentException.class,
+            () -> ScriptCodec.decode(Arrays.copyOf(bytes, bytes.length - 1))),
+        () -> assertThrows(IllegalArgumentException.class,
+            () -> ScriptCodec.decode(Arrays.copyOf(bytes, bytes.length + 1))),
+        // string count: Integer.MAX_VALUE, -1 and a zero with bits above 32 bits followed by an empty block
+        () -> assertThrows(IllegalArgumentException.class,
+            () -> ScriptCodec.decode(script(0xFF, 0xFF, 0xFF, 0xFF, 0x07))),
+        () -> assertThrows(IllegalArgumentException.class,
+            () -> ScriptCodec.decode(script(0xFF, 0xFF, 0xFF, 0xFF, 0x0F))),
+        () -> assertThrows(IllegalArgumentException.class,
+            () -> ScriptCodec.decode(script(0x80, 0x80, 0x80, 0x80, 0x10, 0, 1, 0))),
+        // string length
+        () -> assertThrows(IllegalArgumentException.class,
+            () -> ScriptCodec.decode(script(1, 0xFF, 0xFF, 0xFF, 0xFF, 0x07))),
+        // no string, a block (tag 0) at line 1 with too many expressions
+        () -> assertThrows(IllegalArgumentException.class,
+            () -> ScriptCodec.decode(script(0, 0, 1, 0xFF, 0xFF, 0xFF, 0xFF, 0x07))),
+        // one string "f", a function (tag 3) named "f" with too many parameters
+        () -> assertThrows(IllegalArgumentException.class,
+            () -> ScriptCodec.decode(script(1, 1, 'f', 3, 1, 0, 0xFF, 0xFF, 0xFF, 0xFF, 0x07))),
+        // no string, a block with an object literal (tag 12) with too many fields
+        () -> assertThrows(IllegalArgumentException.class,
+            () -> ScriptCodec.decode(script(0, 0, 1, 1, 12, 1, 0xFF, 0xFF, 0xFF, 0xFF, 0x07)))
+    );
+  }
+
+  @Test
+  public void deeplyNestedInput() {
+    // no string, a block with one expression then 500 000 nested returns (tag 13) at line 1
+    var nested = new int[4 + 2 * 500_000];
+    nested[2] = 1;
+    nested[3] = 1;
+    for (var i = 4; i < nested.length; i += 2) {
+      nested[i] = 13;
+      nested[i + 1] = 1;
+    }
+    assertThrows(IllegalArgumentException.class, () -> ScriptCodec.decode(script(nested)));
+  }
+
+  // the header of a binary script followed by the bytes
+  private static byte[] script(int... bytes) {
+    var script = new byte[5 + bytes.length];
+    script[0] = 'S';
+    script[1] = 'J';
+    script[2] = 'S';
+    script[3] = 'B';
+    script[4] = 1;  // version
+    for (var i = 0; i < bytes.length; i++) {
+      script[5 + i] = (byte) bytes[i];
+    }
+    return script;
+  }
+}
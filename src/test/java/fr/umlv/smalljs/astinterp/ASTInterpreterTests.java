@@ -542,6 +542,186 @@ public class ASTInterpreterTests {
                   """));
     }
   }
+
+  @Nested
+  public class Closures {
+    @Test
+    public void lambdaCapturesParameters() {
+      assertEquals("hello Bob\n", execute("""
+              function test(message, to) {
+                var lambda = function() { print(message, to); };
+                lambda();
+              }
+              test("hello", "Bob");
+              """));
+    }
+
+    @Test
+    public void closureOfClosure() {
+      assertEquals("6\n", execute("""
+              function adder(a) {
+                return function(b) {
+                  return function(c) {
+                    return a + b + c;
+                  };
+                };
+              }
+              print(adder(1)(2)(3));
+              """));
+    }
+
+    @Test
+    public void closureUpdatesCapturedVariable() {
+      assertEquals("1\n2\n", execute("""
+              function counter() {
+                var count = 0;
+                return function() {
+                  count = count + 1;
+                  return count;
+                };
+              }
+              var next = counter();
+              print(next());
+              print(next());
+              """));
+    }
+
+    @Test
+    public void nestedFunctionDeclaration() {
+      assertEquals("42\n", execute("""
+              function outer(x) {
+                function inner() {
+                  return x;
+                }
+                return inner();
+              }
+              print(outer(42));
+              """));
+    }
+
+    @Test
+    public void duplicateParameterLastWins() {
+      assertEquals("2\n", execute("""
+              function f(a, a) {
+                return a;
+              }
+              print(f(1, 2));
+              """));
+    }
+
+    @Test
+    public void duplicateParameterWithLocalVariable() {
+      assertEquals("2 3 3\n", execute("""
+              function f(a, b, a) {
+                var c = b;
+                print(a, c, b - a + 2);
+              }
+              f(1, 3, 2);
+              """));
+    }
+  }
+
+  @Nested
+  public class SelfSpecialization {
+    @Test
+    public void polymorphicCall() {
+      assertEquals("1\n2\n3\n4\n5\n6\n7\n8\n9\n10\n", execute("""
+              function apply(f) {
+                print(f());
+              }
+              apply(function() { return 1; });
+              apply(function() { return 2; });
+              apply(function() { return 3; });
+              apply(function() { return 4; });
+              apply(function() { return 5; });
+              apply(function() { return 6; });
+              apply(function() { return 7; });
+              apply(function() { return 8; });
+              apply(function() { return 9; });
+              apply(function() { return 10; });
+              """));
+    }
+
+    @Test
+    public void callNativeAndScriptFunctions() {
+      assertEquals("3\n-1\n6\n", execute("""
+              function id(x) { return x; }
+              function apply(f) {
+                print(f(2, 1));
+              }
+              apply(function(a, b) { return a + b; });
+              apply(function(a, b) { return b - a; });
+              apply(function(a, b) { return id(a * b) * 3; });
+              """));
+    }
+
+    @Test
+    public void fieldAccessWithDifferentLayouts() {
+      assertEquals("1\n2\n3\nundefined\n", execute("""
+              function getX(o) {
+                return o.x;
+              }
+              print(getX({ x: 1 }));
+              print(getX({ y: 0, x: 2 }));
+              print(getX({ x: 3 }));
+              print(getX({ y: 4 }));
+              """));
+    }
+
+    @Test
+    public void fieldAccessAfterAssignment() {
+      assertEquals("1\n2\n", execute("""
+              function getX(o) {
+                return o.x;
+              }
+              var o = { x: 1 };
+              print(getX(o));
+              o.x = 2;
+              print(getX(o));
+              """));
+    }
+
+    @Test
+    public void methodCallWithDifferentLayouts() {
+      assertEquals("a\nb\na\n", execute("""
+              function callName(o) {
+                print(o.name());
+              }
+              var a = { name: function() { return "a"; } };
+              callName(a);
+              callName({ x: 0, name: function() { return "b"; } });
+              callName(a);
+              """));
+    }
+
+    @Test
+    public void reassignedGlobalVariable() {
+      assertEquals("1\n2\n3\n", execute("""
+              var x = 1;
+              function getX() {
+                return x;
+              }
+              print(getX());
+              x = 2;
+              print(getX());
+              x = 3;
+              print(getX());
+              """));
+    }
+
+    @Test
+    public void redefinedGlobalFunction() {
+      assertEquals("a\nb\n", execute("""
+              function f() { return "a"; }
+              function callF() {
+                return f();
+              }
+              print(callF());
+              f = function() { return "b"; };
+              print(callF());
+              """));
+    }
+  }
   /*
   */
 }
@@ -2,21 +2,45 @@ package fr.umlv.smalljs.jvminterp;
 
 import static fr.umlv.smalljs.ast.ASTBuilder.createScript;
 import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertAll;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import fr.umlv.smalljs.rt.Builtins;
 import fr.umlv.smalljs.rt.Failure;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.PrintStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
 
 public class JVMInterpreterTests {
   private static String execute(String code) {
+    return execute(code, new JVMStats());
+  }
+  private static String execute(String code, JVMStats stats) {
+    var script = createScript(code);
+    var outStream = new ByteArrayOutputStream(8192);
+    JVMInterpreter.interpret(script, new PrintStream(outStream, false, UTF_8), stats);
+    return outStream.toString(UTF_8).replace("\r\n", "\n");
+  }
+  private static String execute(String code, JVMStats stats, Path codeCache) {
     var script = createScript(code);
     var outStream = new ByteArrayOutputStream(8192);
-    JVMInterpreter.interpret(script, new PrintStream(outStream, false, UTF_8));
+    JVMInterpreter.interpret(script, new PrintStream(outStream, false, UTF_8), stats, codeCache);
     return outStream.toString(UTF_8).replace("\r\n", "\n");
   }
 
@@ -487,6 +511,25 @@ public class JVMInterpreterTests {
                   print(f(obj));
                   """));
     }
+
+    @Test
+    public void objectSetAFieldPolymorphic() {
+      assertEquals(
+          "1 2\n3 4\n5 6\n7 8\n9 10\n11 12\n",
+          execute("""
+                  function init(o, x, y) {
+                    o.x = x;
+                    o.y = y;
+                    print(o.x, o.y);
+                  }
+                  init({}, 1, 2);
+                  init({}, 3, 4);
+                  init({ x: 0 }, 5, 6);
+                  init({ y: 0 }, 7, 8);
+                  init({ a: 0 }, 9, 10);
+                  init({ b: 0 }, 11, 12);
+                  """));
+    }
   }
 
   @Nested
@@ -543,6 +586,471 @@ public class JVMInterpreterTests {
                   print(fun(object2));
                   """));
     }
+
+    @Test
+    public void objectCallAMethodPolymorphic() {
+      assertEquals(
+          "1\n2\n1\n3\n",
+          execute("""
+                  function call(o) {
+                    return o.m();
+                  }
+                  var a = { m: function() { return 1; } };
+                  var b = { x: 0, m: function() { return 2; } };
+                  print(call(a));
+                  print(call(b));
+                  print(call(a));
+                  a.m = function() { return 3; };
+                  print(call(a));
+                  """));
+    }
+
+    @Test
+    public void objectCallAMethodMegamorphicWithTheWrongNumberOfArguments() {
+      assertThrows(Failure.class, () -> execute("""
+              function call(o) {
+                return o.m();
+              }
+              call({ m: function() { return 1; } });
+              call({ x: 0, m: function() { return 2; } });
+              call({ y: 0, m: function() { return 3; } });
+              call({ z: 0, m: function() { return 4; } });
+              call({ t: 0, m: function() { return 5; } });
+              call({ u: 0, m: function(a) { return a; } });
+              """));
+    }
+  }
+
+  @Nested
+  public class Intrinsics {
+    @Test
+    public void intOperators() {
+      assertEquals("7\n-1\n12\n0\n3\ntrue\nfalse\n", execute("""
+              function f(a, b) {
+                print(a + b);
+                print(a - b);
+                print(a * b);
+                print(a / b);
+                print(a % b);
+                print(a < b);
+                print(b < a);
+              }
+              f(3, 4);
+              """));
+    }
+
+    @Test
+    public void intOverflow() {
+      assertEquals("-2147483648\n-2147483648\n", execute("""
+              function add(a, b) { return a + b; }
+              function div(a, b) { return a / b; }
+              print(add(2147483647, 1));
+              print(div(0 - 2147483647 - 1, 0 - 1));
+              """));
+    }
+
+    @Test
+    public void nonIntOperands() {
+      assertEquals("true\ntrue\n", execute("""
+              function lt(a, b) { return a < b; }
+              print(lt(1, 2));
+              print(lt("a", "b"));
+              """));
+    }
+  }
+
+  @Nested
+  public class Specialization {
+    @Test
+    public void intParameters() {
+      var stats = new JVMStats();
+      assertEquals("987\n", execute("""
+              function fibo(n) {
+                if (n < 2) {
+                  return 1;
+                }
+                return fibo(n - 1) + fibo(n - 2);
+              }
+              print(fibo(15));
+              """, stats));
+      assertEquals(1, stats.specializations());
+      assertEquals(0, stats.deoptimizations());
+    }
+
+    @Test
+    public void deoptimizeOnNonIntArgument() {
+      var stats = new JVMStats();
+      assertEquals("1\na\n", execute("""
+              function last(x, n) {
+                if (n < 1) {
+                  return x;
+                }
+                return last(x, n - 1);
+              }
+              function repeat(k) {
+                if (k < 1) {
+                  return last(1, 10);
+                }
+                last(1, 10);
+                return repeat(k - 1);
+              }
+              print(repeat(100));
+              print(last("a", 2));
+              """, stats));
+      assertEquals(1, stats.specializations());
+      assertTrue(stats.deoptimizations() > 0);
+    }
+
+    @Test
+    public void assignedParameterIsNotSpecialized() {
+      var stats = new JVMStats();
+      assertEquals("0\n", execute("""
+              function down(n) {
+                if (n < 1) {
+                  return n;
+                }
+                n = n - 1;
+                return down(n);
+              }
+              function repeat(k) {
+                if (k < 1) {
+                  return down(10);
+                }
+                down(10);
+                return repeat(k - 1);
+              }
+              print(repeat(100));
+              """, stats));
+      assertEquals(0, stats.specializations());
+    }
+  }
+
+  @Nested
+  public class CodeCaching {
+    private static final String FIBO = """
+        function fibo(n) {
+          if (n < 2) {
+            return 1;
+          }
+          return fibo(n - 1) + fibo(n - 2);
+        }
+        var o = { f: function(x) { return x + 1; } };
+        print(fibo(15), o.f(1));
+        """;
+
+    private static long fileCount(Path directory) throws IOException {
+      try (var files = Files.list(directory)) {
+        return files.count();
+      }
+    }
+
+    @Test
+    public void secondRunLoadsTheClassesFromTheCache(@TempDir Path directory) throws IOException {
+      var stats1 = new JVMStats();
+      assertEquals("987 2\n", execute(FIBO, stats1, directory));
+      var stats2 = new JVMStats();
+      assertEquals("987 2\n", execute(FIBO, stats2, directory));
+
+      assertEquals(0, stats1.codeCacheHits());
+      assertEquals(1, stats1.specializations());
+      assertEquals(stats1.classesDefined(), fileCount(directory));
+      assertEquals(stats1.classesDefined(), stats2.classesDefined());
+      assertEquals(stats2.classesDefined(), stats2.codeCacheHits());
+    }
+
+    @Test
+    public void changedFunctionIsCompiledAgain(@TempDir Path directory) {
+      execute("""
+          function f() { return 1; }
+          print(f());
+          """, new JVMStats(), directory);
+      var stats = new JVMStats();
+      assertEquals("2\n", execute("""
+          function f() { return 2; }
+          print(f());
+          """, stats, directory));
+      assertEquals(0, stats.codeCacheHits());
+    }
+
+    @Test
+    public void corruptedFilesAreIgnored(@TempDir Path directory) throws IOException {
+      execute(FIBO, new JVMStats(), directory);
+      try (var files = Files.list(directory)) {
+        for (var file : files.toList()) {
+          Files.write(file, new byte[] { 0x0C, 0x0A, 0x0F, 0x0E });
+        }
+      }
+      var stats = new JVMStats();
+      assertEquals("987 2\n", execute(FIBO, stats, directory));
+      assertEquals(0, stats.codeCacheHits());
+    }
+
+    // a class that can be parsed but not verified
+    private static byte[] unverifiableClass() {
+      var writer = new ClassWriter(0);
+      writer.visit(Opcodes.V21, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, "fr/umlv/smalljs/jvminterp/script", null,
+          "java/lang/Object", null);
+      var mv = writer.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "main", "(Ljava/lang/Object;)Ljava/lang/Object;",
+          null, null);
+      mv.visitCode();
+      mv.visitInsn(Opcodes.ARETURN);  // the stack is empty
+      mv.visitMaxs(0, 1);
+      mv.visitEnd();
+      writer.visitEnd();
+      return writer.toByteArray();
+    }
+
+    @Test
+    public void invalidClassesAreGeneratedAgain(@TempDir Path directory) throws IOException {
+      execute(FIBO, new JVMStats(), directory);
+      List<Path> files;
+      try (var stream = Files.list(directory)) {
+        files = stream.sorted().toList();
+      }
+      var contents = new byte[files.size()][];
+      for (var i = 0; i < files.size(); i++) {
+        contents[i] = Files.readAllBytes(files.get(i));
+      }
+      // each file contains the class of another function, then some files are replaced
+      // by a truncated class, a class that can not be verified and garbage
+      for (var i = 0; i < files.size(); i++) {
+        Files.write(files.get(i), contents[(i + 1) % files.size()]);
+      }
+      Files.write(files.get(0), Arrays.copyOf(contents[0], contents[0].length / 2));
+      Files.write(files.get(1), unverifiableClass());
+      Files.write(files.get(2), new byte[] { 0x0C, 0x0A, 0x0F, 0x0E });
+
+      var stats = new JVMStats();
+      assertEquals("987 2\n", execute(FIBO, stats, directory));
+      assertEquals(0, stats.codeCacheHits());
+
+      // the invalid entries have been replaced
+      var stats2 = new JVMStats();
+      assertEquals("987 2\n", execute(FIBO, stats2, directory));
+      assertEquals(stats2.classesDefined(), stats2.codeCacheHits());
+    }
+  }
+
+  @Nested
+  public class Tiering {
+    private static String executeTiered(String code, JVMStats stats, int compileThreshold) {
+      var script = createScript(code);
+      var outStream = new ByteArrayOutputStream(8192);
+      JVMInterpreter.interpret(script, new PrintStream(outStream, false, UTF_8), stats, null, compileThreshold);
+      return outStream.toString(UTF_8).replace("\r\n", "\n");
+    }
+
+    @Test
+    public void coldFunctionsAreNotCompiled() {
+      var stats = new JVMStats();
+      assertEquals("hello 3\n", executeTiered("""
+          function add(a, b) { return a + b; }
+          print("hello", add(1, 2));
+          """, stats, 10));
+      assertEquals(0, stats.classesDefined());
+    }
+
+    @Test
+    public void hotFunctionIsCompiled() {
+      var stats = new JVMStats();
+      assertEquals("987\n", executeTiered("""
+          function fibo(n) {
+            if (n < 2) {
+              return 1;
+            }
+            return fibo(n - 1) + fibo(n - 2);
+          }
+          print(fibo(15));
+          """, stats, 100));
+      // the generic version then the int specialization of fibo
+      assertEquals(2, stats.classesDefined());
+      assertEquals(1, stats.specializations());
+    }
+
+    @Test
+    public void sameSemanticsAsTheCompiledCode() {
+      var code = """
+          globalThis.step = 2;
+          globalThis.counter = {
+            count: 0,
+            inc: function(x) {
+              return x + this.step;
+            },
+            step: 1
+          };
+          function loop(n, acc) {
+            if (n < 1) {
+              return acc;
+            }
+            var next = counter.inc(acc);
+            return loop(n - 1, next);
+          }
+          function declare() {
+            function nested() { return "nested"; }
+            return 0;
+          }
+          if (declare()) {
+            print("0 is true");
+          }
+          print(nested(), loop(20, 0), counter.missing, step);
+          """;
+      var expected = execute(code);
+      assertAll(
+          () -> assertEquals("0 is true\nnested 20 undefined 2\n", expected),
+          () -> assertEquals(expected, executeTiered(code, new JVMStats(), 1)),
+          () -> assertEquals(expected, executeTiered(code, new JVMStats(), 5)),
+          () -> assertEquals(expected, executeTiered(code, new JVMStats(), 1_000))
+      );
+
+      // calling a value that is not a function, a local variable then a global variable
+      for (var notAFunction : List.of("""
+          var x = 3;
+          x();
+          """, """
+          globalThis.y = 3;
+          function f() {
+            return y();
+          }
+          f();
+          """)) {
+        var failure = assertThrows(Failure.class, () -> execute(notAFunction));
+        assertAll(
+            () -> assertEquals("not a function 3", failure.getMessage()),
+            () -> assertEquals(failure.getMessage(),
+                assertThrows(Failure.class, () -> executeTiered(notAFunction, new JVMStats(), 1)).getMessage()),
+            () -> assertEquals(failure.getMessage(),
+                assertThrows(Failure.class, () -> executeTiered(notAFunction, new JVMStats(), 1_000)).getMessage())
+        );
+      }
+    }
+
+    @Test
+    public void unknownVariable() {
+      assertThrows(Failure.class, () -> executeTiered("""
+          function f() {
+            x = 3;
+          }
+          """, new JVMStats(), 10));
+    }
+  }
+
+  @Nested
+  public class HiddenClasses {
+    @Test
+    public void functionIsAHiddenClass() {
+      var body = createScript("print('hello');").body();
+      var mh = ByteCodeRewriter.compile("main", List.of(), body, Builtins.newGlobalEnv(), new JVMStats(), null,
+          -1, new BitSet());
+      var type = MethodHandles.reflectAs(Method.class, mh).getDeclaringClass();
+      assertAll(
+          () -> assertTrue(type.isHidden()),
+          () -> assertSame(ByteCodeRewriter.class.getClassLoader(), type.getClassLoader())
+      );
+    }
+
+    @Test
+    public void oneClassPerFunction() {
+      var stats = new JVMStats();
+      assertEquals("3\n", execute("""
+          function one() { return 1; }
+          var two = function() { return 2; };
+          print(one() + two());
+          """, stats));
+      assertEquals(3, stats.classesDefined());
+    }
+  }
+
+  @Nested
+  public class GlobalCells {
+    @Test
+    public void reassignedGlobalVariable() {
+      assertEquals("1\n2\n3\n", execute("""
+              globalThis.x = 1;
+              function getX() {
+                return x;
+              }
+              print(getX());
+              globalThis.x = 2;
+              print(getX());
+              globalThis.x = 3;
+              print(getX());
+              """));
+    }
+
+    @Test
+    public void redefinedGlobalFunction() {
+      assertEquals("1\n2\n3\n", execute("""
+              function f() {
+                return 1;
+              }
+              function callF() {
+                return f();
+              }
+              print(callF());
+              globalThis.f = function() { return 2; };
+              print(callF());
+              globalThis.f = function() { return 3; };
+              print(callF());
+              """));
+    }
+
+    @Test
+    public void redefinedGlobalFunctionWithTheWrongNumberOfArguments() {
+      assertThrows(Failure.class, () -> execute("""
+              function f() {
+                return 1;
+              }
+              function callF() {
+                return f();
+              }
+              print(callF());
+              globalThis.f = function() { return 2; };
+              print(callF());
+              globalThis.f = function(a) { return a; };
+              print(callF());
+              """));
+    }
+  }
+
+  @Nested
+  public class Stats {
+    @Test
+    public void classesDefinedAndCacheMisses() {
+      var stats = new JVMStats();
+      assertEquals("21\n", execute("""
+              function fibo(n) {
+                if (n < 2) {
+                  return 1;
+                }
+                return fibo(n - 1) + fibo(n - 2);
+              }
+              print(fibo(7));
+              """, stats));
+      assertEquals(2, stats.classesDefined());  // main and fibo
+      assertTrue(stats.cacheMisses() > 0);
+    }
+
+    @Test
+    public void globalWriteDoesNotInvalidateOtherGlobalCalls() {
+      var stats = new JVMStats();
+      assertEquals("0\n100\n", execute("""
+              function id(n) {
+                return n;
+              }
+              function loop(n) {
+                if (n < 1) {
+                  return 0;
+                }
+                globalThis.counter = n;
+                id(n);
+                return loop(n - 1);
+              }
+              globalThis.counter = 0;
+              print(loop(100));
+              print(globalThis.counter + 99);
+              """, stats));
+      assertTrue(stats.cacheMisses() < 50, "cache misses " + stats.cacheMisses());
+    }
   }
   /*
   */
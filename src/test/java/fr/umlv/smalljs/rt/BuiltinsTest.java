@@ -0,0 +1,97 @@
+package fr.umlv.smalljs.rt;
+
+import static fr.umlv.smalljs.ast.ASTBuilder.createScript;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.*;
+
+import fr.umlv.smalljs.ast.Script;
+import fr.umlv.smalljs.astinterp.ASTInterpreter;
+import fr.umlv.smalljs.jvminterp.JVMInterpreter;
+import fr.umlv.smalljs.stackinterp.StackInterpreter;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.function.BiConsumer;
+import org.junit.jupiter.api.Test;
+
+public class BuiltinsTest {
+  @Test
+  public void testNewGlobalEnv() {
+    var globalEnv = Builtins.newGlobalEnv();
+
+    assertAll(
+        () -> assertSame(globalEnv, globalEnv.lookupOrDefault("globalThis", null)),
+        () -> assertSame(Builtins.ADD, globalEnv.lookupOrDefault("+", null)),
+        () -> assertSame(Builtins.GE, globalEnv.lookupOrDefault(">=", null)),
+        () -> assertEquals(12, globalEnv.length())
+    );
+  }
+
+  @Test
+  public void testBuiltinsAreShared() {
+    var globalEnv1 = Builtins.newGlobalEnv();
+    var globalEnv2 = Builtins.newGlobalEnv();
+
+    assertAll(
+        () -> assertNotSame(globalEnv1, globalEnv2),
+        () -> assertSame(globalEnv1.lookupOrDefault("*", null), globalEnv2.lookupOrDefault("*", null)),
+        () -> assertSame(globalEnv1.layout(), globalEnv2.layout())
+    );
+  }
+
+  @Test
+  public void testRedefineABuiltin() {
+    var globalEnv1 = Builtins.newGlobalEnv();
+    var cell = globalEnv1.cell("+");
+    globalEnv1.register("+", Builtins.SUB);
+    globalEnv1.register("foo", 42);
+    var globalEnv2 = Builtins.newGlobalEnv();
+
+    assertAll(
+        () -> assertFalse(cell.stable()),
+        () -> assertSame(Builtins.ADD, globalEnv2.lookupOrDefault("+", null)),
+        () -> assertTrue(globalEnv2.cell("+").stable()),
+        () -> assertNull(globalEnv2.lookupOrDefault("foo", null))
+    );
+  }
+
+  @Test
+  public void testOperators() {
+    assertAll(
+        () -> assertEquals(5, Builtins.ADD.invoke(null, 3, 2)),
+        () -> assertEquals(1, Builtins.SUB.invoke(null, 3, 2)),
+        () -> assertEquals(6, Builtins.MUL.invoke(null, 3, 2)),
+        () -> assertEquals(1, Builtins.DIV.invoke(null, 3, 2)),
+        () -> assertEquals(1, Builtins.REM.invoke(null, 3, 2))
+    );
+  }
+
+  @Test
+  public void testComparisonsReturnBooleans() {
+    assertAll(
+        () -> assertEquals(true, Builtins.EQ.invoke(null, "a", "a")),
+        () -> assertEquals(false, Builtins.NE.invoke(null, "a", "a")),
+        () -> assertEquals(true, Builtins.LT.invoke(null, 1, 2)),
+        () -> assertEquals(true, Builtins.LE.invoke(null, 2, 2)),
+        () -> assertEquals(false, Builtins.GT.invoke(null, 1, 2)),
+        () -> assertEquals(false, Builtins.GE.invoke(null, "a", "b"))
+    );
+  }
+
+  @Test
+  public void testComparisonsArePrintedAsBooleansByEveryEngine() {
+    var script = createScript("""
+        print(1 == 1, 2 < 1);
+        if (2 < 1) {
+          print("false is true");
+        }
+        """);
+    List<BiConsumer<Script, PrintStream>> engines =
+        List.of(ASTInterpreter::interpret, StackInterpreter::interpret, JVMInterpreter::interpret);
+    assertAll(engines.stream().map(engine -> () -> {
+      var outStream = new ByteArrayOutputStream(8192);
+      engine.accept(script, new PrintStream(outStream, false, UTF_8));
+      assertEquals("true false\n", outStream.toString(UTF_8).replace("\r\n", "\n"));
+    }));
+  }
+}
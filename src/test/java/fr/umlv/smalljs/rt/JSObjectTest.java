@@ -4,6 +4,10 @@ import static org.junit.jupiter.api.Assertions.*;
 
 import java.lang.invoke.MethodHandles;
 import java.lang.invoke.MethodType;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
 
@@ -165,6 +169,177 @@ public class JSObjectTest {
           () -> assertNotSame(secondSwitchPoint, obj.switchPoint())
       );
     }
+
+    @Test
+    public void testKeySwitchPointInvalidation() {
+      var obj = JSObject.newObject(null);
+      obj.register("a", 1);
+      obj.register("b", 2);
+      var switchPointA = obj.switchPoint("a");
+      var switchPointB = obj.switchPoint("b");
+
+      obj.register("b", 3);  // update another key
+      obj.register("c", 4);  // add another key
+      var sameSwitchPointA = obj.switchPoint("a");
+      obj.fastStore(obj.layoutSlot("a"), 5);
+
+      assertAll(
+          () -> assertSame(switchPointA, sameSwitchPointA),
+          () -> assertTrue(switchPointA.hasBeenInvalidated()),
+          () -> assertTrue(switchPointB.hasBeenInvalidated()),
+          () -> assertNotSame(switchPointA, obj.switchPoint("a")),
+          () -> assertFalse(obj.switchPoint("c").hasBeenInvalidated()),
+          () -> assertThrows(IllegalArgumentException.class, () -> obj.switchPoint("d"))
+      );
+    }
+
+    @Test
+    public void testPropertyCell() {
+      var env = JSObject.newEnv(null);
+      env.register("a", 1);
+      var cell = env.cell("a");
+      var switchPoint = cell.switchPoint();
+      env.register("b", 2);
+      var stableAfterAdd = cell.stable();
+      env.register("a", 3);
+
+      assertAll(
+          () -> assertSame(cell, env.cell("a")),
+          () -> assertTrue(stableAfterAdd),
+          () -> assertFalse(cell.stable()),
+          () -> assertTrue(switchPoint.hasBeenInvalidated()),
+          () -> assertEquals(3, cell.value()),
+          () -> assertTrue(env.cell("b").stable())
+      );
+    }
+
+    @Test
+    public void testFastStoreAndFastAdd() {
+      var obj = JSObject.newObject(null);
+      obj.register("a", 1);
+      var switchPoint = obj.switchPoint();
+
+      obj.fastStore(obj.layoutSlot("a"), 2);
+      var newLayout = obj.layoutForward("b");
+      obj.fastAdd(newLayout, 3);
+
+      var obj2 = JSObject.newObject(null);
+      obj2.register("a", 4);
+      obj2.register("b", 5);
+
+      assertAll(
+          () -> assertEquals(2, obj.lookupOrDefault("a", null)),
+          () -> assertEquals(3, obj.lookupOrDefault("b", null)),
+          () -> assertEquals(1, obj.layoutSlot("b")),
+          () -> assertEquals(2, obj.length()),
+          () -> assertSame(newLayout, obj.layout()),
+          () -> assertSame(obj.layout(), obj2.layout()),
+          () -> assertTrue(switchPoint.hasBeenInvalidated())
+      );
+    }
+
+    @Test
+    public void testCopy() {
+      var obj = JSObject.newEnv(null);
+      obj.register("a", 1);
+      obj.register("b", 2);
+      var copy = obj.copy(0);
+      copy.register("a", 3);
+      copy.register("c", 4);
+
+      assertAll(
+          () -> assertEquals("env", copy.name()),
+          () -> assertEquals(1, obj.lookupOrDefault("a", null)),
+          () -> assertNull(obj.lookupOrDefault("c", null)),
+          () -> assertEquals(2, obj.length()),
+          () -> assertEquals(3, copy.lookupOrDefault("a", null)),
+          () -> assertEquals(2, copy.lookupOrDefault("b", null)),
+          () -> assertEquals(3, copy.length()),
+          () -> assertThrows(IllegalArgumentException.class, () -> obj.copy(-1))
+      );
+    }
+
+    @Test
+    public void testLengthIsTheNumberOfKeys() {
+      var presized = JSObject.newObject(null, 3);
+      var empty = JSObject.newObject(null);
+      assertEquals(0, presized.length());
+      for (var i = 0; i < 10; i++) {
+        presized.register("field" + i, i);
+        empty.register("field" + i, i);
+        assertEquals(i + 1, presized.length());
+        assertEquals(i + 1, empty.length());
+      }
+      assertAll(
+          () -> assertSame(presized.layout(), empty.layout()),
+          () -> assertEquals(9, presized.lookupOrDefault("field9", null)),
+          () -> assertEquals(10, presized.mirror(v -> v).length()),
+          () -> assertThrows(IllegalArgumentException.class, () -> JSObject.newObject(null, -1))
+      );
+    }
+
+    @Test
+    public void testLargeLayoutSlots() {
+      var obj = JSObject.newObject(null);
+      for (var i = 0; i < 64; i++) {
+        obj.register("field" + i, i);
+      }
+      // enough lookups to build the slot table of the layout
+      for (var round = 0; round < 3; round++) {
+        for (var i = 0; i < 64; i++) {
+          assertEquals(i, obj.layoutSlot(new String("field" + i)));
+          assertEquals(i, obj.lookupOrDefault("field" + i, null));
+        }
+        assertEquals(-1, obj.layoutSlot("field64"));
+      }
+      var obj2 = JSObject.newObject(null);
+      for (var i = 0; i < 64; i++) {
+        obj2.register("field" + i, -i);
+      }
+      assertAll(
+          () -> assertSame(obj.layout(), obj2.layout()),
+          () -> assertEquals(64, obj.length()),
+          () -> assertTrue(obj.toString().contains("field63: 63"))
+      );
+    }
+
+    @Test
+    public void testLayoutsSharedByThreads() throws InterruptedException {
+      // the transitions and the slot tables of the shared layouts are created concurrently
+      var threadCount = 8;
+      var layouts = new Object[threadCount];
+      var errors = new ConcurrentLinkedQueue<Throwable>();
+      var start = new CountDownLatch(1);
+      var threads = new Thread[threadCount];
+      for (var t = 0; t < threadCount; t++) {
+        var id = t;
+        threads[t] = Thread.ofPlatform().start(() -> {
+          try {
+            start.await();
+            var obj = JSObject.newObject(null);
+            for (var i = 0; i < 32; i++) {
+              obj.register("shared" + i, i);
+            }
+            for (var round = 0; round < 20; round++) {
+              for (var i = 0; i < 32; i++) {
+                assertEquals(i, obj.layoutSlot("shared" + i));
+              }
+            }
+            layouts[id] = obj.layout();
+          } catch (Throwable e) {
+            errors.add(e);
+          }
+        });
+      }
+      start.countDown();
+      for (var thread : threads) {
+        thread.join();
+      }
+      assertAll(
+          () -> assertEquals(List.of(), List.copyOf(errors)),
+          () -> assertEquals(1, Arrays.stream(layouts).distinct().count())
+      );
+    }
   }
 
   @Nested
@@ -198,6 +373,61 @@ public class JSObjectTest {
       );
     }
 
+    @Test
+    public void testFixedArityInvocation() throws Exception {
+      var toString = MethodHandles.lookup()
+          .findStatic(Arrays.class, "toString", MethodType.methodType(String.class, Object[].class));
+      for (var arity = 0; arity <= 5; arity++) {
+        // collect the arguments and drop the receiver
+        var mh = toString.asCollector(Object[].class, arity);
+        mh = MethodHandles.dropArguments(mh, 0, Object.class);
+        mh = mh.asType(mh.type().changeParameterType(0, Object.class));
+
+        var func = JSObject.newFunction("toString" + arity, mh);
+        var args = new Object[arity];
+        for (var i = 0; i < arity; i++) {
+          args[i] = i;
+        }
+        assertEquals(Arrays.toString(args), func.invoke(null, args));
+      }
+    }
+
+    @Test
+    public void testFixedArityInvocationWithPrimitiveTypes() throws Exception {
+      var mh = MethodHandles.lookup()
+          .findStatic(Integer.class, "sum", MethodType.methodType(int.class, int.class, int.class));
+      mh = MethodHandles.dropArguments(mh, 0, Object.class);
+
+      var func = JSObject.newFunction("sum", mh);
+      assertEquals(7, func.invoke(null, 3, 4));
+    }
+
+    @Test
+    public void testBinaryFunction() {
+      var func = JSObject.newBinaryFunction("sub", (left, right) -> (int) left - (int) right);
+      var mh = func.methodHandle();
+
+      assertAll(
+          () -> assertFalse(mh.isVarargsCollector()),
+          () -> assertEquals(MethodType.genericMethodType(3), mh.type()),
+          () -> assertEquals(1, func.invoke(null, 3, 2)),
+          () -> assertEquals(1, func.invoke(null, new Object[] { 3, 2 })),
+          () -> assertThrows(Failure.class, () -> func.invoke(null, 3)),
+          () -> assertThrows(Failure.class, () -> func.invoke(null))
+      );
+    }
+
+    @Test
+    public void testFixedArityInvokeOfAnInvokerFunction() {
+      var func = JSObject.newFunction("count", (_, args) -> args.length);
+
+      assertAll(
+          () -> assertEquals(0, func.invoke(null)),
+          () -> assertEquals(1, func.invoke(null, "a")),
+          () -> assertEquals(2, func.invoke(null, "a", "b"))
+      );
+    }
+
     @Test
     public void testNewObjectNoInvokerMH() {
       var obj = JSObject.newObject(null);
@@ -18,7 +18,10 @@ import static fr.umlv.smalljs.stackinterp.TagValues.encodeDictObject;
 import static fr.umlv.smalljs.stackinterp.TagValues.encodeSmallInt;
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import fr.umlv.smalljs.rt.Failure;
 import fr.umlv.smalljs.rt.JSObject;
 import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
@@ -32,16 +35,24 @@ public class StackInterpreterGCTests {
     fun.register("__code__", code);
     return fun;
   }
+  // a small heap that does not grow, to trigger the GC
+  private static final MemoryConfig SMALL_HEAP = new MemoryConfig(96, 96, 96, 96);
+
   private static String execute(Code mainCode, Dictionary dict) {
+    return execute(mainCode, dict, SMALL_HEAP, new GCStats());
+  }
+  private static String execute(Code mainCode, Dictionary dict, GCStats stats) {
+    return execute(mainCode, dict, SMALL_HEAP, stats);
+  }
+  private static String execute(Code mainCode, Dictionary dict, MemoryConfig config, GCStats stats) {
     var outStream = new ByteArrayOutputStream(8192);
     var globalEnv = StackInterpreter.createGlobalEnv(new PrintStream(outStream, false, UTF_8));
     var mainFun = newMainFunction(mainCode);
     globalEnv.register("main", mainFun);
-    StackInterpreter.execute(mainFun, dict, globalEnv);
+    StackInterpreter.execute(mainFun, dict, globalEnv, config, stats);
     return outStream.toString(UTF_8).replace("\r\n", "\n");
   }
 
-	/*
 	@Nested
 	public class Q2 {
 		@Test
@@ -166,6 +177,45 @@ public class StackInterpreterGCTests {
 			};
 			execute(new Code(instrs, 1, 2), dict);
 		}
+
+		@Test
+		public void gcTestStats() {
+			var dict = new Dictionary();
+			var pointClass = JSObject.newObject(null);
+			pointClass.register("x", 0);
+			pointClass.register("y", 1);
+			int[] instrs = {
+					CONST, encodeSmallInt(100),                 //  0
+					STORE, 1,                                         //  2
+
+					LOAD, 1,                                          //  4
+					JUMP_IF_FALSE, 29,                                //  6
+
+					CONST, encodeSmallInt(1),                   //  8
+					CONST, encodeSmallInt(2),                   // 10
+					NEW, encodeDictObject(pointClass, dict),   // 12
+					POP,                                              // 14
+
+					LOOKUP, encodeDictObject("-", dict),       // 15
+					CONST, encodeDictObject(UNDEFINED, dict),  // 17
+					LOAD, 1,                                          // 19
+					CONST, encodeSmallInt(1),                   // 21
+					FUNCALL, 2,                                       // 23
+					STORE, 1,                                         // 25
+
+					GOTO, 4,                                          // 27
+
+					CONST, encodeDictObject(UNDEFINED, dict),  // 29
+					RET                                               // 31
+			};
+			var stats = new GCStats();
+			execute(new Code(instrs, 1, 2), dict, stats);
+			assertTrue(stats.collections() > 0);
+			// all points are garbage, a point is 4 words
+			assertTrue(stats.reclaimedWords() > 0);
+			assertTrue(stats.reclaimedWords() <= 100 * 4);
+			assertEquals(0, stats.reclaimedWords() % 4);
+		}
 	}
 
 	@Nested
@@ -216,5 +266,60 @@ public class StackInterpreterGCTests {
 			execute(new Code(instrs, 1, 4), dict);
 		}
 	}
-	*/
+
+	@Nested
+	public class HeapGrowth {
+		private static int[] linkedListInstrs(JSObject linkClass, Dictionary dict) {
+			return new int[] {
+					CONST, encodeSmallInt(50),                  //  0
+					STORE, 1,                                         //  2
+					CONST, encodeDictObject(UNDEFINED, dict),  //  4
+					STORE, 2,                                         //  6
+
+					LOAD, 1,                                          //  8
+					JUMP_IF_FALSE, 34,                                // 10
+					LOAD, 1,                                          // 12
+					LOAD, 2,                                          // 14
+					NEW, encodeDictObject(linkClass, dict),    // 16
+					STORE, 2, // the whole list is alive              // 18
+
+					LOOKUP, encodeDictObject("-", dict),       // 20
+					CONST, encodeDictObject(UNDEFINED, dict),  // 22
+					LOAD, 1,                                          // 24
+					CONST, encodeSmallInt(1),                   // 26
+					FUNCALL, 2,                                       // 28
+					STORE, 1,                                         // 30
+					GOTO, 8,                                          // 32
+
+					LOAD, 2,                                          // 34
+					GET, encodeDictObject("value", dict),      // 36
+					PRINT,                                            // 38
+
+					CONST, encodeDictObject(UNDEFINED, dict),  // 39
+					RET                                               // 41
+			};
+		}
+
+		@Test
+		public void gcTestHeapGrows() {
+			var dict = new Dictionary();
+			var linkClass = JSObject.newObject(null);
+			linkClass.register("value", 0);
+			linkClass.register("next", 1);
+			var instrs = linkedListInstrs(linkClass, dict);
+			var config = new MemoryConfig(96, 96, 96, 4096);
+			assertEquals("1\n", execute(new Code(instrs, 1, 3), dict, config, new GCStats()));
+		}
+
+		@Test
+		public void gcTestOutOfMemory() {
+			var dict = new Dictionary();
+			var linkClass = JSObject.newObject(null);
+			linkClass.register("value", 0);
+			linkClass.register("next", 1);
+			var instrs = linkedListInstrs(linkClass, dict);
+			var failure = assertThrows(Failure.class, () -> execute(new Code(instrs, 1, 3), dict, SMALL_HEAP, new GCStats()));
+			assertEquals("out of memory", failure.getMessage());
+		}
+	}
 }
@@ -1168,7 +1168,6 @@ public class StackInterpreterInstrTests {
 		}
 	}
 
-	/*
 	@Nested
 	public class Q16 {
 		@Test
@@ -1297,5 +1296,4 @@ public class StackInterpreterInstrTests {
 					execute(new Code(instrs, 1, 2), dict));
 		}
 	}
-	*/
 }
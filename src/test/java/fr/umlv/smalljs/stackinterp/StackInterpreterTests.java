@@ -375,7 +375,33 @@ public class StackInterpreterTests {
               """));
     }
   }
-  /*
+
+  @Nested
+  public class StackGrowth {
+    @Test
+    public void deepRecursion() {
+      assertEquals("0\n", execute("""
+              function down(n) {
+                if (n < 1) {
+                  return 0;
+                }
+                return down(n - 1);
+              }
+              print(down(2000));
+              """));
+    }
+
+    @Test
+    public void stackOverflow() {
+      var failure = assertThrows(Failure.class, () -> execute("""
+              function loop(n) {
+                return loop(n);
+              }
+              loop(1);
+              """));
+      assertEquals("stack overflow", failure.getMessage());
+    }
+  }
 
   @Nested
   public class Q13 {
@@ -520,5 +546,4 @@ public class StackInterpreterTests {
                   """));
     }
   }
-  */
 }